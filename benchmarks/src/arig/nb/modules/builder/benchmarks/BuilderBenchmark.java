@@ -0,0 +1,126 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the generated <code>builder()...build()</code> chains. Run
+ * with <code>-prof gc</code> (the default of the <code>run</code> target)
+ * to see the bytes allocated per built object. The fixture classes are
+ * generated by the headless generator at build time, one package per option
+ * set.
+ *
+ * @author Arkadiusz Gabiga
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuilderBenchmark {
+
+    private final BigDecimal price = new BigDecimal("9.99");
+    private long id;
+    private arig.nb.modules.builder.benchmarks.fixtures.plain.Order plainOrder;
+
+    @Setup
+    public void setUp() {
+        plainOrder = plain();
+    }
+
+    @Benchmark
+    public arig.nb.modules.builder.benchmarks.fixtures.plain.Order plain() {
+        return arig.nb.modules.builder.benchmarks.fixtures.plain.Order.builder()
+                .withId(id++)
+                .withCustomer("customer")
+                .withStreet("street")
+                .withCity("city")
+                .withZip("12345")
+                .withQuantity(3)
+                .withPrice(price)
+                .withExpress(true)
+                .build();
+    }
+
+    @Benchmark
+    public arig.nb.modules.builder.benchmarks.fixtures.threadlocal.Order threadLocal() {
+        return arig.nb.modules.builder.benchmarks.fixtures.threadlocal.Order.builder()
+                .withId(id++)
+                .withCustomer("customer")
+                .withStreet("street")
+                .withCity("city")
+                .withZip("12345")
+                .withQuantity(3)
+                .withPrice(price)
+                .withExpress(true)
+                .build();
+    }
+
+    @Benchmark
+    public arig.nb.modules.builder.benchmarks.fixtures.collections.Order collections() {
+        return arig.nb.modules.builder.benchmarks.fixtures.collections.Order.builder()
+                .withId(id++)
+                .withCustomer("customer")
+                .withQuantity(3)
+                .addItem("first")
+                .addItem("second")
+                .putAttribute("gift", "yes")
+                .build();
+    }
+
+    @Benchmark
+    public arig.nb.modules.builder.benchmarks.fixtures.collections.Order collectionsEmpty() {
+        return arig.nb.modules.builder.benchmarks.fixtures.collections.Order.builder()
+                .withId(id++)
+                .withCustomer("customer")
+                .withQuantity(3)
+                .build();
+    }
+
+    @Benchmark
+    public arig.nb.modules.builder.benchmarks.fixtures.plain.Order toBuilder() {
+        return plainOrder.toBuilder().withQuantity(4).build();
+    }
+
+    @Benchmark
+    public arig.nb.modules.builder.benchmarks.fixtures.plain.Order copyMethod() {
+        return plainOrder.withQuantity(4);
+    }
+}
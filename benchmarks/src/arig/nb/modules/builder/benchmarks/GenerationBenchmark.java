@@ -0,0 +1,207 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.benchmarks;
+
+import arig.nb.modules.builder.core.BuilderOptions;
+import arig.nb.modules.builder.core.ClassBuilder;
+import arig.nb.modules.builder.core.CollectionKind;
+import arig.nb.modules.builder.core.Snippet;
+import arig.nb.modules.builder.core.SourceGenerator;
+import arig.nb.modules.builder.core.SourceMaker;
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of generating a builder for synthetic classes of growing size.
+ * <p>
+ * The editor action builds its trees with the NetBeans
+ * <code>TreeMaker</code>, which only exists inside a running IDE. These
+ * benchmarks drive the same <code>ClassBuilder</code> and
+ * <code>ClassGenerator</code> with the {@link SourceMaker} of the headless
+ * generator instead. {@link #buildClass()} measures
+ * <code>ClassBuilder.buildClass()</code> alone, {@link #generate()} the
+ * whole modification task on an already parsed file and
+ * {@link #parseAndGenerate()} includes parsing. {@link #update()} runs the
+ * generator again over its own output, which goes through
+ * <code>BuilderUpdater</code> and finds nothing to change, the cost of
+ * every rerun on a file whose fields did not change.
+ *
+ * @author Arkadiusz Gabiga
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+
+    private static final String[] FIELD_TYPES = {
+        "String", "int", "long", "boolean", "java.math.BigDecimal", "List<String>", "Map<String, Integer>", "T"
+    };
+
+    @Param({"10", "100", "1000"})
+    public int fields;
+
+    @Param({"0", "2"})
+    public int typeParameters;
+
+    @Param({"false", "true"})
+    public boolean collections;
+
+    private BuilderOptions options;
+    private String source;
+    private CompilationUnitTree cut;
+    private SourcePositions positions;
+    private ClassTree clazz;
+    private List<VariableTree> classFields;
+    private Map<String, CollectionKind> collectionKinds;
+    private String generated;
+    private CompilationUnitTree generatedCut;
+    private SourcePositions generatedPositions;
+
+    @Setup
+    public void setUp() throws IOException {
+        options = new BuilderOptions();
+        options.setReusable(true);
+        options.setCollections(collections);
+        source = syntheticClass(fields, typeParameters);
+        JavacTask task = parser(source);
+        cut = task.parse().iterator().next();
+        positions = Trees.instance(task).getSourcePositions();
+        clazz = (ClassTree) cut.getTypeDecls().get(0);
+        classFields = new ArrayList<VariableTree>();
+        collectionKinds = new HashMap<String, CollectionKind>();
+        Util util = new Util();
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.VARIABLE && util.canProcess((VariableTree) member)) {
+                VariableTree field = (VariableTree) member;
+                classFields.add(field);
+                CollectionKind kind = collections ? CollectionKind.of(field, cut.getImports()) : null;
+                if (kind != null) {
+                    collectionKinds.put(field.getName().toString(), kind);
+                }
+            }
+        }
+        generated = new SourceGenerator(options).generate(cut, positions, source);
+        JavacTask generatedTask = parser(generated);
+        generatedCut = generatedTask.parse().iterator().next();
+        generatedPositions = Trees.instance(generatedTask).getSourcePositions();
+    }
+
+    @Benchmark
+    public Snippet buildClass() {
+        ClassBuilder<Snippet> cb = new ClassBuilder<Snippet>(new SourceMaker(), clazz.getSimpleName().toString(),
+                options, classFields, clazz.getTypeParameters());
+        cb.setCollections(collectionKinds);
+        return cb.buildClass();
+    }
+
+    @Benchmark
+    public String generate() {
+        return new SourceGenerator(options).generate(cut, positions, source);
+    }
+
+    @Benchmark
+    public String update() {
+        return new SourceGenerator(options).generate(generatedCut, generatedPositions, generated);
+    }
+
+    @Benchmark
+    public String parseAndGenerate() throws IOException {
+        JavacTask task = parser(source);
+        CompilationUnitTree parsed = task.parse().iterator().next();
+        return new SourceGenerator(options).generate(parsed, Trees.instance(task).getSourcePositions(), source);
+    }
+
+    private static JavacTask parser(final String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///bench/Synthetic.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        return (JavacTask) compiler.getTask(null, null, null, Arrays.asList("-proc:none"), null, Collections.singletonList(file));
+    }
+
+    /**
+     * @return source of a class with given number of fields, cycling
+     * through plain, collection and type parameter typed ones
+     */
+    static String syntheticClass(int fields, int typeParameters) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package bench;\n\nimport java.util.List;\nimport java.util.Map;\n\npublic class Synthetic");
+        if (typeParameters > 0) {
+            sb.append('<');
+            for (int i = 0; i < typeParameters; i++) {
+                sb.append(i == 0 ? "" : ", ").append('T').append(i + 1);
+            }
+            sb.append('>');
+        }
+        sb.append(" {\n");
+        int types = typeParameters > 0 ? FIELD_TYPES.length : FIELD_TYPES.length - 1;
+        for (int i = 0; i < fields; i++) {
+            String type = FIELD_TYPES[i % types];
+            if ("T".equals(type)) {
+                type = "T" + (i % typeParameters + 1);
+            }
+            sb.append("    private ").append(type).append(" field").append(i).append(";\n");
+        }
+        return sb.append("}\n").toString();
+    }
+}
@@ -0,0 +1,130 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.headless;
+
+import arig.nb.modules.builder.core.BuilderOptions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line entry point of the headless generator.
+ * <pre>
+ * java -jar builder-headless.jar [-prefix with] [-reusable] [-threadlocal] [-collections] [-notobuilder] [-copymethods] [-staged] [-hierarchy] [-streaming] [-separatefile] [-generated gen] [-threads 8] [-encoding UTF-8] [-verbose] &lt;file or directory&gt;...
+ * </pre>
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class BuilderMain {
+
+    private static final String USAGE = "Usage: java -jar builder-headless.jar [-prefix <prefix>] [-reusable] [-threadlocal] [-collections] [-notobuilder] [-copymethods] [-staged] [-hierarchy] [-streaming] [-separatefile] [-generated <dir>] [-threads <count>] [-encoding <charset>] [-verbose] <file or directory>...";
+
+    public static void main(String[] args) {
+        BuilderOptions options = new BuilderOptions();
+        Charset encoding = Charset.forName("UTF-8");
+        boolean verbose = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> roots = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-prefix".equals(arg) && i + 1 < args.length) {
+                options.setMethodPrefix(args[++i]);
+            } else if ("-reusable".equals(arg)) {
+                options.setReusable(true);
+            } else if ("-threadlocal".equals(arg)) {
+                options.setThreadLocal(true);
+            } else if ("-collections".equals(arg)) {
+                options.setCollections(true);
+            } else if ("-notobuilder".equals(arg)) {
+                options.setToBuilder(false);
+            } else if ("-copymethods".equals(arg)) {
+                options.setCopyMethods(true);
+            } else if ("-staged".equals(arg)) {
+                options.setStaged(true);
+            } else if ("-hierarchy".equals(arg)) {
+                options.setHierarchy(true);
+            } else if ("-streaming".equals(arg)) {
+                options.setStreaming(true);
+            } else if ("-separatefile".equals(arg)) {
+                options.setSeparateFile(true);
+            } else if ("-generated".equals(arg) && i + 1 < args.length) {
+                options.setGeneratedSourcesRoot(args[++i]);
+            } else if ("-threads".equals(arg) && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException ex) {
+                    System.err.println(USAGE);
+                    System.exit(2);
+                }
+            } else if ("-encoding".equals(arg) && i + 1 < args.length) {
+                encoding = Charset.forName(args[++i]);
+            } else if ("-verbose".equals(arg)) {
+                verbose = true;
+            } else if (arg.startsWith("-")) {
+                System.err.println(USAGE);
+                System.exit(2);
+            } else {
+                roots.add(new File(arg));
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        HeadlessGenerator generator = new HeadlessGenerator(options, encoding);
+        generator.setThreads(threads);
+        if (verbose) {
+            generator.setListener(new HeadlessGenerator.Listener() {
+                public void generated(File file) {
+                    System.out.println("Generated builder in " + file);
+                }
+
+                public void skipped(File file, String reason) {
+                    System.out.println("Skipped " + file + ": " + reason);
+                }
+            });
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int modified = generator.generate(roots);
+            System.out.println("Modified " + modified + " files in " + (System.currentTimeMillis() - start) + " ms");
+            for (Map.Entry<File, String> error : generator.getErrors().entrySet()) {
+                System.err.println("Cannot parse " + error.getKey() + ", left unchanged: " + error.getValue());
+            }
+            if (!generator.getErrors().isEmpty()) {
+                System.exit(1);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.headless;
+
+import arig.nb.modules.builder.core.BuilderOptions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * Ant task generating builders in place.
+ * <pre>
+ * &lt;generate-builders srcdir="src" prefix="with" reusable="false" threadLocal="false" collections="false" toBuilder="true" copyMethods="false" staged="false" hierarchy="false" streaming="false" separateFile="false" generatedSourcesRoot="gen" threads="8" encoding="UTF-8"/&gt;
+ * </pre>
+ * Nested <code>&lt;fileset&gt;</code> elements may be used instead of or
+ * together with <code>srcdir</code>.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class GenerateBuildersTask extends Task {
+
+    private File srcdir;
+    private final BuilderOptions options = new BuilderOptions();
+    private String encoding = "UTF-8";
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final List<FileSet> filesets = new ArrayList<FileSet>();
+
+    public void setSrcdir(File srcdir) {
+        this.srcdir = srcdir;
+    }
+
+    public void setPrefix(String prefix) {
+        options.setMethodPrefix(prefix);
+    }
+
+    public void setReusable(boolean reusable) {
+        options.setReusable(reusable);
+    }
+
+    public void setThreadLocal(boolean threadLocal) {
+        options.setThreadLocal(threadLocal);
+    }
+
+    public void setCollections(boolean collections) {
+        options.setCollections(collections);
+    }
+
+    public void setToBuilder(boolean toBuilder) {
+        options.setToBuilder(toBuilder);
+    }
+
+    public void setCopyMethods(boolean copyMethods) {
+        options.setCopyMethods(copyMethods);
+    }
+
+    public void setStaged(boolean staged) {
+        options.setStaged(staged);
+    }
+
+    public void setHierarchy(boolean hierarchy) {
+        options.setHierarchy(hierarchy);
+    }
+
+    public void setStreaming(boolean streaming) {
+        options.setStreaming(streaming);
+    }
+
+    public void setSeparateFile(boolean separateFile) {
+        options.setSeparateFile(separateFile);
+    }
+
+    public void setGeneratedSourcesRoot(File generatedSourcesRoot) {
+        options.setGeneratedSourcesRoot(generatedSourcesRoot.getPath());
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public void addFileset(FileSet fileset) {
+        filesets.add(fileset);
+    }
+
+    @Override
+    public void execute() throws BuildException {
+        List<File> roots = new ArrayList<File>();
+        if (srcdir != null) {
+            roots.add(srcdir);
+        }
+        for (FileSet fileset : filesets) {
+            DirectoryScanner scanner = fileset.getDirectoryScanner(getProject());
+            for (String name : scanner.getIncludedFiles()) {
+                roots.add(new File(scanner.getBasedir(), name));
+            }
+        }
+        if (roots.isEmpty()) {
+            throw new BuildException("Either srcdir or a nested fileset is required", getLocation());
+        }
+
+        HeadlessGenerator generator = new HeadlessGenerator(options, Charset.forName(encoding));
+        generator.setThreads(threads);
+        generator.setListener(new HeadlessGenerator.Listener() {
+            public void generated(File file) {
+                log("Generated builder in " + file, Project.MSG_VERBOSE);
+            }
+
+            public void skipped(File file, String reason) {
+                log("Skipped " + file + ": " + reason, Project.MSG_DEBUG);
+            }
+        });
+        try {
+            int modified = generator.generate(roots);
+            log("Generated builders in " + modified + " files");
+        } catch (IOException ex) {
+            throw new BuildException(ex, getLocation());
+        }
+        for (Map.Entry<File, String> error : generator.getErrors().entrySet()) {
+            log("Cannot parse " + error.getKey() + ", left unchanged: " + error.getValue(), Project.MSG_ERR);
+        }
+        if (!generator.getErrors().isEmpty()) {
+            throw new BuildException(generator.getErrors().size() + " files do not parse", getLocation());
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.headless;
+
+import arig.nb.modules.builder.core.BuilderOptions;
+import arig.nb.modules.builder.core.SourceGenerator;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.Trees;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates builders for java files outside of the IDE. Files are only
+ * parsed, never attributed, and are handled in chunks, so both time and
+ * memory stay proportional to the chunk size rather than to the size of the
+ * source tree. Chunks are parsed and generated by a pool of worker threads,
+ * each with a compiler task of its own, while all files are written by the
+ * calling thread, in the order of the chunks. Files which do not parse are
+ * left as they are and reported, see {@link #getErrors}.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class HeadlessGenerator {
+
+    public static final int CHUNK_SIZE = 500;
+    private static final String JAVA_EXT = ".java";
+    private final JavaCompiler compiler;
+    private final SourceGenerator generator;
+    private final BuilderOptions options;
+    private final Charset encoding;
+    private Listener listener;
+    private final Map<File, String> errors = new LinkedHashMap<File, String>();
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public HeadlessGenerator(BuilderOptions options, Charset encoding) {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No system java compiler, run on a JDK rather than a JRE");
+        }
+        this.generator = new SourceGenerator(options);
+        this.options = options;
+        this.encoding = encoding;
+        this.listener = new Listener() {
+            public void generated(File file) {
+            }
+
+            public void skipped(File file, String reason) {
+            }
+        };
+    }
+
+    /**
+     * The listener is only called from the thread running
+     * {@link #generate(Collection)}.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param threads number of chunks parsed and generated at the same time,
+     * the number of processors by default
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return the first syntax error of every file left unchanged by the
+     * last {@link #generate(Collection)} because it does not parse
+     */
+    public Map<File, String> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @param roots java files or directories to search recursively
+     * @return number of modified files
+     */
+    public int generate(Collection<File> roots) throws IOException {
+        errors.clear();
+        List<File> files = new ArrayList<File>();
+        for (File root : roots) {
+            collect(root, files);
+        }
+        List<List<File>> chunks = new ArrayList<List<File>>();
+        int chunkSize = Math.max(1, Math.min(CHUNK_SIZE, (files.size() + threads - 1) / threads));
+        for (int from = 0; from < files.size(); from += chunkSize) {
+            chunks.add(files.subList(from, Math.min(from + chunkSize, files.size())));
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, chunks.size())));
+        try {
+            if (options.isHierarchy()) {
+                generator.setLevels(collectLevels(workers, chunks));
+            }
+            // at most two chunks per thread are parsed or waiting to be
+            // written, which bounds the generated sources held in memory
+            Deque<Future<List<Result>>> pending = new ArrayDeque<Future<List<Result>>>();
+            int next = 0;
+            int modified = 0;
+            while (next < chunks.size() || !pending.isEmpty()) {
+                while (next < chunks.size() && pending.size() < 2 * threads) {
+                    pending.add(workers.submit(new GenerateChunk(chunks.get(next++))));
+                }
+                for (Result result : get(pending.removeFirst())) {
+                    modified += write(result);
+                }
+            }
+            return modified;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Class hierarchies span files, so all of them are parsed once up front
+     * to find the abstract classes.
+     */
+    private Set<String> collectLevels(ExecutorService workers, List<List<File>> chunks) throws IOException {
+        List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>();
+        for (final List<File> chunk : chunks) {
+            futures.add(workers.submit(new Callable<Set<String>>() {
+                public Set<String> call() throws IOException {
+                    Set<String> levels = new HashSet<String>();
+                    StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, encoding);
+                    try {
+                        JavacTask task = task(fileManager, chunk, new DiagnosticCollector<JavaFileObject>());
+                        for (CompilationUnitTree cut : task.parse()) {
+                            generator.collectLevels(cut, levels);
+                        }
+                    } finally {
+                        fileManager.close();
+                    }
+                    return levels;
+                }
+            }));
+        }
+        Set<String> levels = new HashSet<String>();
+        for (Future<Set<String>> future : futures) {
+            levels.addAll(get(future));
+        }
+        return levels;
+    }
+
+    /**
+     * File managers of javac are not thread safe, every chunk gets its own.
+     */
+    private JavacTask task(StandardJavaFileManager fileManager, List<File> chunk,
+            DiagnosticCollector<JavaFileObject> diagnostics) {
+        return (JavacTask) compiler.getTask(null, fileManager, diagnostics,
+                Arrays.asList("-proc:none"), null, fileManager.getJavaFileObjectsFromFiles(chunk));
+    }
+
+    /**
+     * javac recovers from syntax errors, but the tree it comes up with is a
+     * guess, and a builder generated from it could be wrong.
+     *
+     * @return the first error of every file, by the URI of the file
+     */
+    private static Map<URI, String> errors(DiagnosticCollector<JavaFileObject> diagnostics) {
+        Map<URI, String> errors = new HashMap<URI, String>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getSource() != null
+                    && !errors.containsKey(diagnostic.getSource().toUri())) {
+                errors.put(diagnostic.getSource().toUri(),
+                        "line " + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(null));
+            }
+        }
+        return errors;
+    }
+
+    private <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Builder generation interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Builder files are generated as a whole on every run, they are only
+     * written if they differ from the file on disk.
+     *
+     * @return number of files written
+     */
+    private int write(Result result) throws IOException {
+        if (result.error != null) {
+            errors.put(result.file, result.error);
+            listener.skipped(result.file, result.error);
+            return 0;
+        }
+        int modified = 0;
+        for (String reason : result.skipped) {
+            listener.skipped(result.file, reason);
+        }
+        for (Map.Entry<String, String> builderFile : result.builderFiles.entrySet()) {
+            File target = builderFile(result.file, builderFile.getKey());
+            if (builderFile.getValue().equals(read(target))) {
+                continue;
+            }
+            write(target, builderFile.getValue());
+            listener.generated(target);
+            modified++;
+        }
+        if (result.source == null) {
+            if (result.builderFiles.isEmpty() && result.skipped.isEmpty()) {
+                listener.skipped(result.file, "nothing to generate");
+            }
+            return modified;
+        }
+        write(result.file, result.source);
+        listener.generated(result.file);
+        return modified + 1;
+    }
+
+    /**
+     * @param path path of the builder file relative to the source root
+     * @return the file next to its class, or under
+     * {@link BuilderOptions#getGeneratedSourcesRoot}, its folders created
+     */
+    private File builderFile(File file, String path) throws IOException {
+        String generated = options.getGeneratedSourcesRoot();
+        File target = generated.length() == 0
+                ? new File(file.getParentFile(), path.substring(path.lastIndexOf('/') + 1))
+                : new File(generated, path);
+        File folder = target.getParentFile();
+        if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Cannot create " + folder);
+        }
+        return target;
+    }
+
+    private void collect(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collect(child, files);
+                }
+            }
+        } else if (file.getName().endsWith(JAVA_EXT)) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * @return content of the file, <code>null</code> if it does not exist
+     */
+    private String read(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        Reader reader = new InputStreamReader(new FileInputStream(file), encoding);
+        try {
+            StringBuilder sb = new StringBuilder((int) file.length());
+            char[] buffer = new char[8192];
+            for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+                sb.append(buffer, 0, read);
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void write(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), encoding);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Parses and generates one chunk on a worker thread, nothing is written.
+     */
+    private class GenerateChunk implements Callable<List<Result>> {
+
+        private final List<File> chunk;
+
+        GenerateChunk(List<File> chunk) {
+            this.chunk = chunk;
+        }
+
+        public List<Result> call() throws IOException {
+            List<Result> results = new ArrayList<Result>(chunk.size());
+            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, encoding);
+            try {
+                DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+                JavacTask task = task(fileManager, chunk, diagnostics);
+                SourcePositions positions = Trees.instance(task).getSourcePositions();
+                Iterable<? extends CompilationUnitTree> cuts = task.parse();
+                Map<URI, String> errors = errors(diagnostics);
+                for (CompilationUnitTree cut : cuts) {
+                    File file = new File(cut.getSourceFile().toUri());
+                    String error = errors.get(cut.getSourceFile().toUri());
+                    if (error != null) {
+                        results.add(new Result(file, error));
+                        continue;
+                    }
+                    CharSequence source = cut.getSourceFile().getCharContent(true);
+                    Map<String, String> builderFiles = new LinkedHashMap<String, String>();
+                    List<String> skipped = new ArrayList<String>();
+                    String result = generator.generate(cut, positions, source, builderFiles, skipped);
+                    results.add(new Result(file, result, builderFiles, skipped));
+                }
+            } finally {
+                fileManager.close();
+            }
+            return results;
+        }
+    }
+
+    private static class Result {
+
+        private final File file;
+        private final String source;
+        private final Map<String, String> builderFiles;
+        private final List<String> skipped;
+        private final String error;
+
+        Result(File file, String source, Map<String, String> builderFiles, List<String> skipped) {
+            this.file = file;
+            this.source = source;
+            this.builderFiles = builderFiles;
+            this.skipped = skipped;
+            this.error = null;
+        }
+
+        /**
+         * @param error why the file does not parse
+         */
+        Result(File file, String error) {
+            this.file = file;
+            this.source = null;
+            this.builderFiles = Collections.emptyMap();
+            this.skipped = Collections.emptyList();
+            this.error = error;
+        }
+    }
+
+    public interface Listener {
+
+        void generated(File file);
+
+        void skipped(File file, String reason);
+    }
+}
@@ -0,0 +1,118 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import arig.nb.modules.builder.GenerationStatistics;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards the bytes allocated per generated field, the number published as
+ * <code>GeneratedBytesPerField</code>: generating the builder of a parsed
+ * class must stay under {@link #MAX_BYTES_PER_FIELD}, about 10% over the
+ * 29.8 KB measured on JDK 17. Copy methods and streaming are off: every
+ * copy method assigns all fields, so their bytes per field grow with the
+ * number of fields.
+ * <p>
+ * Only the text path is covered, {@link SourceGenerator} with
+ * {@link SourceMaker} and {@link SourceEditor}, as used by the headless
+ * generator. The IDE path builds its trees with <code>TreeMaker</code> and
+ * edits a <code>WorkingCopy</code>, which only exist inside a running IDE;
+ * its allocation is published by <code>GenerationStatistics</code> at run
+ * time instead. Both paths share {@link ClassGenerator}, so a regression in
+ * the shared core shows up here. The caches sharing generated trees between
+ * members were reverted, a tree must have a single parent for the working
+ * copy; only the sets of modifiers are shared.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class AllocationTest {
+
+    private static final long MAX_BYTES_PER_FIELD = 32 * 1024;
+    private static final int FIELDS = 24;
+    private static final int WARMUP = 200;
+    private static final int RUNS = 100;
+    private CompilationUnitTree cut;
+    private SourcePositions positions;
+    private CharSequence source;
+
+    @Before
+    public void setUp() throws IOException {
+        StringBuilder sb = new StringBuilder("package p;\n\nimport java.util.List;\nimport java.util.Map;\n\npublic class Order {\n");
+        String[] types = {"String", "int", "long", "boolean", "List<String>", "Map<String, Integer>"};
+        for (int i = 0; i < FIELDS; i++) {
+            sb.append("    private ").append(types[i % types.length]).append(" field").append(i).append(";\n");
+        }
+        source = sb.append("}\n").toString();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///p/Order.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavacTask task = (JavacTask) compiler.getTask(null, null, null, Arrays.asList("-proc:none"), null,
+                Collections.singletonList(file));
+        cut = task.parse().iterator().next();
+        positions = Trees.instance(task).getSourcePositions();
+    }
+
+    @Test
+    public void testBytesPerField() {
+        assumeTrue(GenerationStatistics.allocatedBytes() >= 0);
+        BuilderOptions options = new BuilderOptions();
+        options.setCollections(true);
+        options.setReusable(true);
+        SourceGenerator generator = new SourceGenerator(options);
+        for (int i = 0; i < WARMUP; i++) {
+            generator.generate(cut, positions, source);
+        }
+
+        long start = GenerationStatistics.allocatedBytes();
+        for (int i = 0; i < RUNS; i++) {
+            generator.generate(cut, positions, source);
+        }
+        long perField = (GenerationStatistics.allocatedBytes() - start) / RUNS / FIELDS;
+        assertTrue(perField + " bytes allocated per field, at most " + MAX_BYTES_PER_FIELD + " expected",
+                perField <= MAX_BYTES_PER_FIELD);
+    }
+}
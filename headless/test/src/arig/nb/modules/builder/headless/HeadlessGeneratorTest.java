@@ -0,0 +1,213 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.headless;
+
+import arig.nb.modules.builder.core.BuilderOptions;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the generator twice over the same sources: the second run must find
+ * nothing to change.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class HeadlessGeneratorTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private File root;
+    private File item;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("builder", "");
+        if (!root.delete() || !new File(root, "p").mkdirs()) {
+            throw new IOException("Cannot create " + root);
+        }
+        item = new File(root, "p/Item.java");
+        write(item, "package p;\n"
+                + "\n"
+                + "import java.util.List;\n"
+                + "\n"
+                + "public class Item {\n"
+                + "\n"
+                + "    private String name;\n"
+                + "    private int count;\n"
+                + "    private List<String> tags;\n"
+                + "    private List<String> data;\n"
+                + "}\n");
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    @Test
+    public void testRerun() throws IOException {
+        BuilderOptions options = new BuilderOptions();
+        options.setCollections(true);
+        options.setCopyMethods(true);
+        options.setStreaming(true);
+        assertRerunUnchanged(options, 1);
+    }
+
+    @Test
+    public void testRerunSeparateFile() throws IOException {
+        BuilderOptions options = new BuilderOptions();
+        options.setCollections(true);
+        options.setStreaming(true);
+        options.setSeparateFile(true);
+        assertRerunUnchanged(options, 2);
+
+        String source = read(item);
+        assertEquals(source.indexOf("writeTo("), source.lastIndexOf("writeTo("));
+        assertEquals(source.indexOf("Item(ItemBuilder"), source.lastIndexOf("Item(ItemBuilder"));
+    }
+
+    @Test
+    public void testSyntaxError() throws IOException {
+        File broken = new File(root, "p/Broken.java");
+        String source = "package p;\n"
+                + "\n"
+                + "public class Broken {\n"
+                + "\n"
+                + "    private String name\n"
+                + "    private int count;\n"
+                + "}\n";
+        write(broken, source);
+        HeadlessGenerator generator = generator(new BuilderOptions());
+        assertEquals(1, generator.generate(Collections.singletonList(root)));
+        assertEquals(source, read(broken));
+        assertEquals(Collections.singleton(broken), generator.getErrors().keySet());
+    }
+
+    @Test
+    public void testLastFinalFieldRemoved() throws IOException {
+        write(item, read(item).replace("private String name;", "private final String name;"));
+        BuilderOptions options = new BuilderOptions();
+        options.setCopyMethods(true);
+        assertRerunUnchanged(options, 1);
+        assertTrue(read(item).contains("return new Item(this.name, this.count, this.tags, this.data);"));
+
+        write(item, read(item).replace("private final String name;", "private String name;"));
+        assertEquals(1, generator(options).generate(Collections.singletonList(root)));
+        String source = read(item);
+        assertTrue(source.contains("public Item() {"));
+        assertTrue(source.contains("return new Item(this);"));
+        assertFalse(source.contains("private Item(String name"));
+    }
+
+    @Test
+    public void testReorderedConstructor() throws IOException {
+        File range = new File(root, "p/Range.java");
+        String source = "package p;\n"
+                + "\n"
+                + "public class Range {\n"
+                + "\n"
+                + "    private final int low;\n"
+                + "    private final int high;\n"
+                + "\n"
+                + "    public Range(int high, int low) {\n"
+                + "        this.high = high;\n"
+                + "        this.low = low;\n"
+                + "    }\n"
+                + "}\n";
+        write(range, source);
+        assertEquals(1, generator(new BuilderOptions()).generate(Collections.singletonList(root)));
+        assertEquals(source, read(range));
+
+        write(range, source.replace("public Range(", "private Range("));
+        assertEquals(1, generator(new BuilderOptions()).generate(Collections.singletonList(root)));
+        String generated = read(range);
+        assertTrue(generated.contains("private Range(int low, int high) {"));
+        assertTrue(generated.contains("return new Range(this.low, this.high);"));
+    }
+
+    /**
+     * The second run writes no file at all, builder files included.
+     */
+    private void assertRerunUnchanged(BuilderOptions options, int files) throws IOException {
+        assertEquals(files, generator(options).generate(Collections.singletonList(root)));
+        String first = read(item);
+        assertEquals(0, generator(options).generate(Collections.singletonList(root)));
+        assertEquals(first, read(item));
+    }
+
+    private HeadlessGenerator generator(BuilderOptions options) {
+        HeadlessGenerator generator = new HeadlessGenerator(options, UTF_8);
+        generator.setThreads(1);
+        return generator;
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[4096];
+            for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+                sb.append(buffer, 0, read);
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,265 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.processor;
+
+import arig.nb.modules.builder.annotation.GenerateBuilder;
+import arig.nb.modules.builder.core.BuilderNames;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates builders for classes annotated with {@link GenerateBuilder}.
+ * Every builder is derived from its annotated class only, so the processor
+ * is isolating and works with incremental compilation.
+ *
+ * @author Arkadiusz Gabiga
+ */
+@SupportedAnnotationTypes("arig.nb.modules.builder.annotation.GenerateBuilder")
+public class BuilderProcessor extends AbstractProcessor {
+
+    private static final String INDENT = "    ";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateBuilder.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@GenerateBuilder is applicable to classes only");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+                error(type, "@GenerateBuilder requires a top level or a static nested class");
+                continue;
+            }
+            try {
+                generate(type, type.getAnnotation(GenerateBuilder.class).prefix());
+            } catch (IOException ex) {
+                error(type, "Cannot write builder: " + ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type, String prefix) throws IOException {
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (!field.getModifiers().contains(Modifier.STATIC)) {
+                fields.add(field);
+            }
+        }
+
+        boolean allArgs = hasAllArgsConstructor(type, fields, true);
+        if (!allArgs && hasAllArgsConstructor(type, fields, false)) {
+            error(type, "@GenerateBuilder requires the parameters of the constructor taking all fields to be named "
+                    + "like the fields, in declaration order, otherwise the builder could swap them");
+            return;
+        }
+        if (!allArgs && !canAssignFields(type, fields)) {
+            return;
+        }
+
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String className = relativeName(type, packageName);
+        String builderName = className.replace(".", "") + BuilderNames.BUILDER_CLASS_NAME;
+        String typeArguments = typeArguments(type.getTypeParameters());
+        String typeParameters = typeParameters(type.getTypeParameters());
+        String builderType = builderName + typeArguments;
+        String targetType = className + typeArguments;
+
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("// Generated by ").append(BuilderProcessor.class.getName()).append(" from ")
+                .append(type.getQualifiedName()).append(", do not edit.\n");
+        if (type.getModifiers().contains(Modifier.PUBLIC)) {
+            sb.append("public ");
+        }
+        sb.append("class ").append(builderName).append(typeParameters).append(" {\n\n");
+        for (VariableElement field : fields) {
+            sb.append(INDENT).append("private ").append(field.asType()).append(' ').append(field.getSimpleName()).append(";\n");
+        }
+        sb.append('\n');
+        sb.append(INDENT).append("public static ").append(typeParameters.isEmpty() ? "" : typeParameters + " ")
+                .append(builderType).append(' ').append(BuilderNames.BUILDER_METHOD_NAME).append("() {\n");
+        sb.append(INDENT).append(INDENT).append("return new ").append(builderType).append("();\n");
+        sb.append(INDENT).append("}\n");
+        for (VariableElement field : fields) {
+            String name = field.getSimpleName().toString();
+            sb.append('\n');
+            sb.append(INDENT).append("public ").append(builderType).append(' ').append(BuilderNames.methodName(prefix, name))
+                    .append('(').append(field.asType()).append(' ').append(name).append(") {\n");
+            sb.append(INDENT).append(INDENT).append("this.").append(name).append(" = ").append(name).append(";\n");
+            sb.append(INDENT).append(INDENT).append("return this;\n");
+            sb.append(INDENT).append("}\n");
+        }
+        sb.append('\n');
+        sb.append(INDENT).append("public ").append(targetType).append(' ').append(BuilderNames.BUILD_METHOD_NAME).append("() {\n");
+        if (allArgs) {
+            sb.append(INDENT).append(INDENT).append("return new ").append(targetType).append('(');
+            for (int i = 0; i < fields.size(); i++) {
+                sb.append(i == 0 ? "" : ", ").append("this.").append(fields.get(i).getSimpleName());
+            }
+            sb.append(");\n");
+        } else {
+            sb.append(INDENT).append(INDENT).append(targetType).append(" obj = new ").append(targetType).append("();\n");
+            for (VariableElement field : fields) {
+                String name = field.getSimpleName().toString();
+                sb.append(INDENT).append(INDENT).append("obj.").append(name).append(" = this.").append(name).append(";\n");
+            }
+            sb.append(INDENT).append(INDENT).append("return obj;\n");
+        }
+        sb.append(INDENT).append("}\n");
+        sb.append("}\n");
+
+        String qualifiedBuilderName = packageName.isEmpty() ? builderName : packageName + "." + builderName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedBuilderName, type);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param byName whether the parameters have to be named like the fields,
+     * too
+     */
+    private boolean hasAllArgsConstructor(TypeElement type, List<VariableElement> fields, boolean byName) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || parameters.size() != fields.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < fields.size() && matches; i++) {
+                VariableElement parameter = parameters.get(i);
+                matches = processingEnv.getTypeUtils().isSameType(parameter.asType(), fields.get(i).asType())
+                        && (!byName || parameter.getSimpleName().contentEquals(fields.get(i).getSimpleName()));
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean canAssignFields(TypeElement type, List<VariableElement> fields) {
+        boolean hasEmptyConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasEmptyConstructor = true;
+            }
+        }
+        if (!hasEmptyConstructor) {
+            error(type, "@GenerateBuilder requires a non-private constructor taking all fields in declaration order "
+                    + "or a non-private parameterless constructor");
+            return false;
+        }
+        boolean assignable = true;
+        for (VariableElement field : fields) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                error(field, "Field cannot be set by the generated builder, make it non-private and non-final "
+                        + "or add a constructor taking all fields");
+                assignable = false;
+            }
+        }
+        return assignable;
+    }
+
+    /**
+     * @return name of the type relative to its package, e.g.
+     * <code>Outer.Inner</code>
+     */
+    private String relativeName(TypeElement type, String packageName) {
+        String name = type.getQualifiedName().toString();
+        return packageName.isEmpty() ? name : name.substring(packageName.length() + 1);
+    }
+
+    private String typeArguments(List<? extends TypeParameterElement> parameters) {
+        if (parameters.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("<");
+        for (TypeParameterElement parameter : parameters) {
+            sb.append(sb.length() > 1 ? ", " : "").append(parameter.getSimpleName());
+        }
+        return sb.append('>').toString();
+    }
+
+    private String typeParameters(List<? extends TypeParameterElement> parameters) {
+        if (parameters.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("<");
+        for (TypeParameterElement parameter : parameters) {
+            sb.append(sb.length() > 1 ? ", " : "").append(parameter.getSimpleName());
+            List<? extends TypeMirror> bounds = parameter.getBounds();
+            String separator = " extends ";
+            for (TypeMirror bound : bounds) {
+                if (bounds.size() == 1 && Object.class.getName().equals(bound.toString())) {
+                    break;
+                }
+                sb.append(separator).append(bound);
+                separator = " & ";
+            }
+        }
+        return sb.append('>').toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
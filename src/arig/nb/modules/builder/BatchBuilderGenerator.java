@@ -0,0 +1,292 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder;
+
+import arig.nb.modules.builder.GenerationStatistics.Phase;
+import arig.nb.modules.builder.core.BuilderOptions;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+import org.netbeans.api.java.source.ClasspathInfo;
+import org.netbeans.api.java.source.JavaSource;
+import org.netbeans.api.java.source.ModificationResult;
+import org.netbeans.api.progress.ProgressHandle;
+import org.netbeans.api.progress.ProgressHandleFactory;
+import org.openide.filesystems.FileObject;
+import org.openide.util.Cancellable;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Generates builders for all java files found under a set of folders. Files
+ * are processed in batches, each batch is a single {@link JavaSource} running
+ * a {@link BuilderTask} of its own. Batches are analysed and generated by a
+ * pool of worker threads, while their {@link ModificationResult}s are
+ * committed one at a time, in the order of the batches, by the thread
+ * driving the run, which hands each commit over to AWT thread. A file belongs
+ * to a single batch, so no two results ever touch the same document. The
+ * java infrastructure may still serialize the modification tasks themselves,
+ * what the pool always gains is analysing the next batches while the
+ * previous one is being committed. How much that gains has not been
+ * measured. The run can be cancelled from the progress bar, the batches not
+ * committed at that moment are then discarded, as they are when a batch
+ * fails.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class BatchBuilderGenerator {
+
+    public static final int BATCH_SIZE = 100;
+    public static final int WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final String JAVA_EXT = "java";
+    private static final RequestProcessor RP = new RequestProcessor(BatchBuilderGenerator.class.getName(), 1);
+    private static final RequestProcessor WORKER_RP = new RequestProcessor(BatchBuilderGenerator.class.getName() + ".workers", WORKERS);
+
+    /**
+     * Schedules generation for every java file under given folders. Returns
+     * immediately, the work is done by a background request processor.
+     *
+     * @param roots folders (packages, source roots) to process recursively
+     */
+    public void generate(final Collection<? extends FileObject> roots) {
+        RP.post(new Runnable() {
+            public void run() {
+                process(roots);
+            }
+        });
+    }
+
+    private void process(Collection<? extends FileObject> roots) {
+        Map<FileObject, List<FileObject>> filesByRoot = collectFiles(roots);
+        final BuilderOptions options = BuilderSettings.load();
+        List<Batch> batches = new ArrayList<Batch>();
+        int total = 0;
+        for (Map.Entry<FileObject, List<FileObject>> entry : filesByRoot.entrySet()) {
+            ClasspathInfo cpInfo = ClasspathInfo.create(entry.getKey());
+            List<FileObject> files = entry.getValue();
+            for (int from = 0; from < files.size(); from += BATCH_SIZE) {
+                batches.add(new Batch(cpInfo, files.subList(from, Math.min(from + BATCH_SIZE, files.size())), options));
+            }
+            total += files.size();
+        }
+
+        final List<Batch> started = new CopyOnWriteArrayList<Batch>();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        GenerationStatistics.Run statistics = GenerationStatistics.getDefault().start();
+        ProgressHandle handle = ProgressHandleFactory.createHandle(
+                NbBundle.getMessage(BatchBuilderGenerator.class, "MSG_GeneratingBuilders"),
+                new Cancellable() {
+                    public boolean cancel() {
+                        cancelled.set(true);
+                        for (Batch batch : started) {
+                            batch.task.cancel();
+                        }
+                        return true;
+                    }
+                });
+        handle.start(total);
+        // at most two batches per worker are generated or waiting for their
+        // commit, which bounds the modification results held in memory
+        Deque<FutureTask<ModificationResult>> pending = new ArrayDeque<FutureTask<ModificationResult>>();
+        Deque<Batch> pendingBatches = new ArrayDeque<Batch>();
+        boolean completed = false;
+        try {
+            int next = 0;
+            int done = 0;
+            while (next < batches.size() || !pending.isEmpty()) {
+                while (next < batches.size() && pending.size() < 2 * WORKERS && !cancelled.get()) {
+                    Batch batch = batches.get(next++);
+                    started.add(batch);
+                    FutureTask<ModificationResult> future = new FutureTask<ModificationResult>(batch);
+                    WORKER_RP.execute(future);
+                    pending.add(future);
+                    pendingBatches.add(batch);
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                ModificationResult result = get(pending.removeFirst());
+                Batch batch = pendingBatches.removeFirst();
+                started.remove(batch);
+                statistics.add(batch.task.getStatistics());
+                if (cancelled.get()) {
+                    continue;
+                }
+                if (result != null) {
+                    long start = System.nanoTime();
+                    commit(result);
+                    statistics.add(Phase.COMMIT, start);
+                }
+                done += batch.files.size();
+                handle.progress(done);
+            }
+            completed = true;
+        } catch (IOException ex) {
+            statistics.failed(ex);
+        } catch (RuntimeException ex) {
+            statistics.failed(ex);
+            throw ex;
+        } catch (Error ex) {
+            statistics.failed(ex);
+            throw ex;
+        } finally {
+            // whatever ended the run early, no batch may go on in the
+            // background once the progress bar is gone
+            if (!completed) {
+                cancelled.set(true);
+                for (Batch batch : started) {
+                    batch.task.cancel();
+                }
+                for (FutureTask<ModificationResult> future : pending) {
+                    future.cancel(false);
+                }
+            }
+            statistics.finish();
+            handle.finish();
+        }
+    }
+
+    private ModificationResult get(FutureTask<ModificationResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Commits in AWT thread and waits for it, so that no more than one batch
+     * of changes is held in memory.
+     */
+    private void commit(final ModificationResult result) throws IOException {
+        final IOException[] failure = new IOException[1];
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    try {
+                        result.commit();
+                    } catch (IOException ex) {
+                        failure[0] = ex;
+                    }
+                }
+            });
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (InvocationTargetException ex) {
+            throw new IOException(ex.getCause());
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Files of one classpath generated by a worker, with a task and
+     * statistics of their own.
+     */
+    private static class Batch implements Callable<ModificationResult> {
+
+        private final ClasspathInfo cpInfo;
+        private final List<FileObject> files;
+        private final BuilderTask task;
+
+        Batch(ClasspathInfo cpInfo, List<FileObject> files, BuilderOptions options) {
+            this.cpInfo = cpInfo;
+            this.files = files;
+            this.task = new BuilderTask(options);
+        }
+
+        /**
+         * @return changes to commit, <code>null</code> if cancelled
+         */
+        public ModificationResult call() throws IOException {
+            if (task.isCancelled()) {
+                return null;
+            }
+            JavaSource javaSource = JavaSource.create(cpInfo, files);
+            if (javaSource == null) {
+                return null;
+            }
+            ModificationResult result = javaSource.runModificationTask(task);
+            return task.isCancelled() ? null : result;
+        }
+    }
+
+    /**
+     * Files are grouped by the folder they were found under, so that one
+     * classpath is shared by the whole group. A file reachable from several
+     * selected folders is processed only once.
+     */
+    private Map<FileObject, List<FileObject>> collectFiles(Collection<? extends FileObject> roots) {
+        Map<FileObject, List<FileObject>> filesByRoot = new LinkedHashMap<FileObject, List<FileObject>>();
+        Set<FileObject> seen = new HashSet<FileObject>();
+        for (FileObject root : roots) {
+            List<FileObject> files = new ArrayList<FileObject>();
+            Enumeration<? extends FileObject> children = root.getChildren(true);
+            while (children.hasMoreElements()) {
+                FileObject fo = children.nextElement();
+                if (fo.isData() && JAVA_EXT.equals(fo.getExt()) && seen.add(fo)) {
+                    files.add(fo);
+                }
+            }
+            if (!files.isEmpty()) {
+                filesByRoot.put(root, files);
+            }
+        }
+        return filesByRoot;
+    }
+}
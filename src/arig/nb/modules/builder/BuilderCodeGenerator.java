@@ -26,35 +26,27 @@
  */
 package arig.nb.modules.builder;
 
-import arig.nb.modules.builder.logic.ClassBuilder;
-import arig.nb.modules.builder.utils.Util;
-import com.sun.source.tree.ClassTree;
-import com.sun.source.tree.CompilationUnitTree;
-import com.sun.source.tree.MethodTree;
-import com.sun.source.tree.Tree;
-import com.sun.source.tree.TypeParameterTree;
-import com.sun.source.tree.VariableTree;
+import arig.nb.modules.builder.GenerationStatistics.Phase;
+import arig.nb.modules.builder.core.BuilderOptions;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import javax.lang.model.element.Element;
-import javax.lang.model.element.ElementKind;
-import javax.lang.model.element.TypeElement;
+import javax.swing.SwingUtilities;
 import javax.swing.text.Document;
 import javax.swing.text.JTextComponent;
 import org.netbeans.api.editor.mimelookup.MimeRegistration;
-import org.netbeans.api.java.source.CancellableTask;
 import org.netbeans.api.java.source.JavaSource;
-import org.netbeans.api.java.source.JavaSource.Phase;
 import org.netbeans.api.java.source.ModificationResult;
-import org.netbeans.api.java.source.TreeMaker;
-import org.netbeans.api.java.source.WorkingCopy;
+import org.netbeans.api.progress.ProgressHandle;
+import org.netbeans.api.progress.ProgressHandleFactory;
 import org.netbeans.spi.editor.codegen.CodeGenerator;
 import org.netbeans.spi.editor.codegen.CodeGeneratorContextProvider;
+import org.openide.DialogDescriptor;
+import org.openide.DialogDisplayer;
+import org.openide.util.Cancellable;
 import org.openide.util.Lookup;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
 
 /**
  *
@@ -62,22 +54,26 @@ import org.openide.util.Lookup;
  */
 public class BuilderCodeGenerator implements CodeGenerator {
 
+    private static final RequestProcessor RP = new RequestProcessor(BuilderCodeGenerator.class.getName(), 1);
     JTextComponent textComp;
+    private final boolean customize;
 
     /**
      *
      * @param context containing JTextComponent and possibly other items
      * registered by {@link CodeGeneratorContextProvider}
+     * @param customize whether to ask for builder options first
      */
-    private BuilderCodeGenerator(Lookup context) { // Good practice is not to save Lookup outside ctor
+    private BuilderCodeGenerator(Lookup context, boolean customize) { // Good practice is not to save Lookup outside ctor
         textComp = context.lookup(JTextComponent.class);
+        this.customize = customize;
     }
 
     @MimeRegistration(mimeType = "text/x-java", service = CodeGenerator.Factory.class)
     public static class Factory implements CodeGenerator.Factory {
 
         public List<? extends CodeGenerator> create(Lookup context) {
-            return Collections.singletonList(new BuilderCodeGenerator(context));
+            return Arrays.asList(new BuilderCodeGenerator(context, false), new BuilderCodeGenerator(context, true));
         }
     }
 
@@ -85,106 +81,68 @@ public class BuilderCodeGenerator implements CodeGenerator {
      * The name which will be inserted inside Insert Code dialog
      */
     public String getDisplayName() {
-        return "Generate builder";
+        return customize ? "Generate builder..." : "Generate builder";
     }
 
     /**
      * This will be invoked when user chooses this Generator from Insert Code
-     * dialog
+     * dialog. Generation runs in background and may be cancelled from the
+     * progress bar, only the commit of the result is done in AWT thread.
      */
     public void invoke() {
-        try {
-            final Util util = new Util();
-            Document doc = textComp.getDocument();
-            JavaSource javaSource = JavaSource.forDocument(doc);
-            CancellableTask<WorkingCopy> task = new CancellableTask<WorkingCopy>() {
-                public void run(WorkingCopy workingCopy) throws IOException {
-                    workingCopy.toPhase(Phase.RESOLVED);
-                    CompilationUnitTree cut = workingCopy.getCompilationUnit();
-                    TreeMaker make = workingCopy.getTreeMaker();
-
-                    Map<String, Boolean> syntheticConstructors = new HashMap<String, Boolean>();
-
-                    List<? extends TypeElement> topLevelElements = workingCopy.getTopLevelElements();
-                    for (TypeElement el : topLevelElements) {
-                        if (el.getKind() == ElementKind.CLASS) {
-                            List<? extends Element> enclosedElements = el.getEnclosedElements();
-                            for (Element element : enclosedElements) {
-                                if (element.getKind() == ElementKind.CONSTRUCTOR) {
-                                    if (workingCopy.getElementUtilities().isSynthetic(element)) {
-                                        syntheticConstructors.put(el.getSimpleName().toString(), Boolean.TRUE);
-                                    }
-                                }
-                            }
-                        }
+        Document doc = textComp.getDocument();
+        final JavaSource javaSource = JavaSource.forDocument(doc);
+        if (javaSource == null) {
+            return;
+        }
+        BuilderOptions options = BuilderSettings.load();
+        if (customize) {
+            BuilderOptionsPanel panel = new BuilderOptionsPanel(options);
+            DialogDescriptor descriptor = new DialogDescriptor(panel,
+                    NbBundle.getMessage(BuilderCodeGenerator.class, "LBL_GenerateBuilderOptions"));
+            if (DialogDisplayer.getDefault().notify(descriptor) != DialogDescriptor.OK_OPTION) {
+                return;
+            }
+            options = panel.getOptions();
+            BuilderSettings.store(options);
+        }
+        final BuilderTask task = new BuilderTask(options);
+        final GenerationStatistics.Run statistics = task.getStatistics();
+        final ProgressHandle handle = ProgressHandleFactory.createHandle(
+                NbBundle.getMessage(BuilderCodeGenerator.class, "MSG_GeneratingBuilder"),
+                new Cancellable() {
+                    public boolean cancel() {
+                        task.cancel();
+                        return true;
                     }
-
-                    for (Tree typeDecl : cut.getTypeDecls()) {
-                        if (Tree.Kind.CLASS == typeDecl.getKind()) {
-                            ClassTree clazz = (ClassTree) typeDecl;
-                            List<TypeParameterTree> params = new ArrayList<TypeParameterTree>(clazz.getTypeParameters());
-                            List<VariableTree> fields = new ArrayList<VariableTree>();
-                            List<? extends Tree> members = clazz.getMembers();
-                            boolean isSyntheticConstructor = syntheticConstructors.containsKey(clazz.getSimpleName().toString());
-                            boolean hasEmptyConstructor = false;
-                            for (Tree memTree : members) {
-                                if (Tree.Kind.VARIABLE == memTree.getKind()) {
-                                    VariableTree var = (VariableTree) memTree;
-                                    if(util.canProcess(var)) {
-                                        fields.add(var);
-                                    }
-                                }
-
-                                if (memTree.getKind() == Tree.Kind.METHOD) {
-                                    MethodTree mt = (MethodTree) memTree;
-                                    if (isEmptyConstructor(mt) && isSyntheticConstructor) {
-                                        hasEmptyConstructor = false;
-                                    } else if (isEmptyConstructor(mt) && !isSyntheticConstructor) {
-                                        hasEmptyConstructor = true; 
-                                    }
-
+                });
+        RP.post(new Runnable() {
+            public void run() {
+                handle.start();
+                try {
+                    final ModificationResult result = javaSource.runModificationTask(task);
+                    if (task.isCancelled()) {
+                        statistics.finish();
+                    } else {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            public void run() {
+                                long start = System.nanoTime();
+                                try {
+                                    result.commit();
+                                    statistics.add(Phase.COMMIT, start);
+                                    statistics.finish();
+                                } catch (IOException ex) {
+                                    statistics.failed(ex);
                                 }
                             }
-
-                            ClassBuilder cb = new ClassBuilder(make, clazz.getSimpleName().toString(), "with", fields, params);
-//                            ClassBuilder cb = new ClassBuilder(make, clazz.getSimpleName().toString(), "", fields, params);
-                            ClassTree builderClass = cb.buildClass();
-
-                            Tree builderMethod = cb.createBuilderMethod();
-                            Tree constructor = cb.createConstructor();
-
-                            ClassTree modifiedClazz = null;
-
-                            if (!hasEmptyConstructor) {
-                                Tree emptyConstructor = cb.createEmptyConstructor();
-                                modifiedClazz = make.addClassMember(clazz, emptyConstructor);
-                                modifiedClazz = make.addClassMember(modifiedClazz, constructor);
-                                modifiedClazz = make.addClassMember(modifiedClazz, builderMethod);
-                                modifiedClazz = make.addClassMember(modifiedClazz, builderClass);
-                            } else {
-                                modifiedClazz = make.addClassMember(clazz, constructor);
-                                modifiedClazz = make.addClassMember(modifiedClazz, builderMethod);
-                                modifiedClazz = make.addClassMember(modifiedClazz, builderClass);
-                            }
-
-                            workingCopy.rewrite(clazz, modifiedClazz);
-                        }
+                        });
                     }
+                } catch (Exception ex) {
+                    statistics.failed(ex);
+                } finally {
+                    handle.finish();
                 }
-
-                public void cancel() {
-                }
-            };
-            ModificationResult result = javaSource.runModificationTask(task);
-            result.commit();
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
-    }
-
-    private boolean isEmptyConstructor(MethodTree mt) {
-        return mt.getName().toString().equals("<init>") 
-                && mt.getReturnType() == null
-                && mt.getParameters().isEmpty();
+            }
+        });
     }
 }
@@ -0,0 +1,154 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder;
+
+import arig.nb.modules.builder.core.BuilderOptions;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
+import javax.swing.BorderFactory;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import org.openide.util.NbBundle;
+
+/**
+ * Options shown by the "Generate builder..." action.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class BuilderOptionsPanel extends JPanel {
+
+    private final JTextField methodPrefix;
+    private final JCheckBox reusable;
+    private final JCheckBox threadLocal;
+    private final JCheckBox collections;
+    private final JCheckBox toBuilder;
+    private final JCheckBox copyMethods;
+    private final JCheckBox staged;
+    private final JCheckBox hierarchy;
+    private final JCheckBox streaming;
+    private final JCheckBox separateFile;
+    private final JTextField generatedSourcesRoot;
+    private int row;
+
+    public BuilderOptionsPanel(BuilderOptions options) {
+        super(new GridBagLayout());
+        setBorder(BorderFactory.createEmptyBorder(12, 12, 0, 12));
+
+        methodPrefix = addTextField("LBL_MethodPrefix", options.getMethodPrefix());
+        reusable = addCheckBox("LBL_Reusable", options.isReusable());
+        threadLocal = addCheckBox("LBL_ThreadLocal", options.isThreadLocal());
+        threadLocal.addItemListener(new ItemListener() {
+            public void itemStateChanged(ItemEvent e) {
+                updateEnabled();
+            }
+        });
+        collections = addCheckBox("LBL_Collections", options.isCollections());
+        toBuilder = addCheckBox("LBL_ToBuilder", options.isToBuilder());
+        copyMethods = addCheckBox("LBL_CopyMethods", options.isCopyMethods());
+        staged = addCheckBox("LBL_Staged", options.isStaged());
+        hierarchy = addCheckBox("LBL_Hierarchy", options.isHierarchy());
+        streaming = addCheckBox("LBL_Streaming", options.isStreaming());
+        separateFile = addCheckBox("LBL_SeparateFile", options.isSeparateFile());
+        separateFile.addItemListener(new ItemListener() {
+            public void itemStateChanged(ItemEvent e) {
+                updateEnabled();
+            }
+        });
+        generatedSourcesRoot = addTextField("LBL_GeneratedSourcesRoot", options.getGeneratedSourcesRoot());
+        generatedSourcesRoot.setToolTipText(message("LBL_GeneratedSourcesRoot_Tooltip"));
+        updateEnabled();
+    }
+
+    public BuilderOptions getOptions() {
+        BuilderOptions options = new BuilderOptions();
+        options.setMethodPrefix(methodPrefix.getText().trim());
+        options.setReusable(reusable.isSelected());
+        options.setThreadLocal(threadLocal.isSelected());
+        options.setCollections(collections.isSelected());
+        options.setToBuilder(toBuilder.isSelected());
+        options.setCopyMethods(copyMethods.isSelected());
+        options.setStaged(staged.isSelected());
+        options.setHierarchy(hierarchy.isSelected());
+        options.setStreaming(streaming.isSelected());
+        options.setSeparateFile(separateFile.isSelected());
+        options.setGeneratedSourcesRoot(generatedSourcesRoot.getText());
+        return options;
+    }
+
+    private void updateEnabled() {
+        reusable.setEnabled(!threadLocal.isSelected());
+        if (threadLocal.isSelected()) {
+            reusable.setSelected(true);
+        }
+        generatedSourcesRoot.setEnabled(separateFile.isSelected());
+    }
+
+    private JTextField addTextField(String key, String text) {
+        JTextField textField = new JTextField(text, 12);
+        JLabel label = new JLabel(message(key));
+        label.setLabelFor(textField);
+        GridBagConstraints c = constraints();
+        c.gridwidth = 1;
+        add(label, c);
+        c = constraints();
+        c.gridx = 1;
+        c.gridwidth = 1;
+        c.insets = new Insets(0, 6, 6, 0);
+        add(textField, c);
+        row++;
+        return textField;
+    }
+
+    private JCheckBox addCheckBox(String key, boolean selected) {
+        JCheckBox checkBox = new JCheckBox(message(key), selected);
+        checkBox.setToolTipText(message(key + "_Tooltip"));
+        add(checkBox, constraints());
+        row++;
+        return checkBox;
+    }
+
+    private GridBagConstraints constraints() {
+        GridBagConstraints c = new GridBagConstraints();
+        c.gridx = 0;
+        c.gridy = row;
+        c.gridwidth = 2;
+        c.anchor = GridBagConstraints.WEST;
+        c.fill = GridBagConstraints.HORIZONTAL;
+        c.weightx = 1;
+        c.insets = new Insets(0, 0, 6, 0);
+        return c;
+    }
+
+    private static String message(String key) {
+        return NbBundle.getMessage(BuilderOptionsPanel.class, key);
+    }
+}
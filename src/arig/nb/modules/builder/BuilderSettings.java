@@ -0,0 +1,92 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder;
+
+import arig.nb.modules.builder.core.BuilderOptions;
+import java.util.prefs.Preferences;
+import org.openide.util.NbPreferences;
+
+/**
+ * Builder options remembered between IDE sessions. The last options chosen
+ * in the "Generate builder..." dialog are used by the plain "Generate
+ * builder" action and by the batch actions.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public final class BuilderSettings {
+
+    private static final String METHOD_PREFIX = "methodPrefix";
+    private static final String REUSABLE = "reusable";
+    private static final String THREAD_LOCAL = "threadLocal";
+    private static final String COLLECTIONS = "collections";
+    private static final String TO_BUILDER = "toBuilder";
+    private static final String COPY_METHODS = "copyMethods";
+    private static final String STAGED = "staged";
+    private static final String HIERARCHY = "hierarchy";
+    private static final String SEPARATE_FILE = "separateFile";
+    private static final String GENERATED_SOURCES_ROOT = "generatedSourcesRoot";
+    private static final String STREAMING = "streaming";
+
+    private BuilderSettings() {
+    }
+
+    public static BuilderOptions load() {
+        Preferences preferences = preferences();
+        BuilderOptions options = new BuilderOptions();
+        options.setMethodPrefix(preferences.get(METHOD_PREFIX, options.getMethodPrefix()));
+        options.setReusable(preferences.getBoolean(REUSABLE, false));
+        options.setThreadLocal(preferences.getBoolean(THREAD_LOCAL, false));
+        options.setCollections(preferences.getBoolean(COLLECTIONS, false));
+        options.setToBuilder(preferences.getBoolean(TO_BUILDER, true));
+        options.setCopyMethods(preferences.getBoolean(COPY_METHODS, false));
+        options.setStaged(preferences.getBoolean(STAGED, false));
+        options.setHierarchy(preferences.getBoolean(HIERARCHY, false));
+        options.setSeparateFile(preferences.getBoolean(SEPARATE_FILE, false));
+        options.setGeneratedSourcesRoot(preferences.get(GENERATED_SOURCES_ROOT, ""));
+        options.setStreaming(preferences.getBoolean(STREAMING, false));
+        return options;
+    }
+
+    public static void store(BuilderOptions options) {
+        Preferences preferences = preferences();
+        preferences.put(METHOD_PREFIX, options.getMethodPrefix());
+        preferences.putBoolean(REUSABLE, options.isReusable());
+        preferences.putBoolean(THREAD_LOCAL, options.isThreadLocal());
+        preferences.putBoolean(COLLECTIONS, options.isCollections());
+        preferences.putBoolean(TO_BUILDER, options.isToBuilder());
+        preferences.putBoolean(COPY_METHODS, options.isCopyMethods());
+        preferences.putBoolean(STAGED, options.isStaged());
+        preferences.putBoolean(HIERARCHY, options.isHierarchy());
+        preferences.putBoolean(SEPARATE_FILE, options.isSeparateFile());
+        preferences.put(GENERATED_SOURCES_ROOT, options.getGeneratedSourcesRoot());
+        preferences.putBoolean(STREAMING, options.isStreaming());
+    }
+
+    private static Preferences preferences() {
+        return NbPreferences.forModule(BuilderSettings.class);
+    }
+}
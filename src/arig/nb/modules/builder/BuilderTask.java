@@ -0,0 +1,358 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder;
+
+import arig.nb.modules.builder.ClassModelCache.ClassModel;
+import arig.nb.modules.builder.GenerationStatistics.Phase;
+import arig.nb.modules.builder.core.BuilderOptions;
+import arig.nb.modules.builder.core.BuilderUpdater;
+import arig.nb.modules.builder.core.ClassGenerator;
+import arig.nb.modules.builder.core.CollectionKind;
+import arig.nb.modules.builder.logic.TreeCodeMaker;
+import arig.nb.modules.builder.logic.WorkingCopyEditor;
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import org.netbeans.api.java.classpath.ClassPath;
+import org.netbeans.api.java.source.CancellableTask;
+import org.netbeans.api.java.source.JavaSource;
+import org.netbeans.api.java.source.TreeUtilities;
+import org.netbeans.api.java.source.WorkingCopy;
+import org.netbeans.api.project.FileOwnerQuery;
+import org.netbeans.api.project.Project;
+import org.openide.awt.StatusDisplayer;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Modification task adding a Builder to every top level and static nested
+ * class of the compilation unit it is run on. Classes which already have one
+ * get their builder updated to match the current fields instead. The same
+ * task instance may be run on many working copies, so it can be passed to a
+ * {@link JavaSource} created for several files at once.
+ * <p>
+ * The task can be cancelled from any thread, it then stops between classes
+ * and between members. A cancelled task leaves the working copy half done, so
+ * the modification result must not be committed, see {@link #isCancelled()}.
+ * <p>
+ * Timings of the task are recorded in {@link #getStatistics()}, the caller
+ * adds the commit and finishes the run.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class BuilderTask implements CancellableTask<WorkingCopy> {
+
+    private final Util util = new Util();
+    private final BuilderOptions options;
+    private final ClassModelCache cache = ClassModelCache.getDefault();
+    private final GenerationStatistics.Run statistics = GenerationStatistics.getDefault().start();
+    private volatile boolean cancelled;
+
+    public BuilderTask() {
+        this(new BuilderOptions());
+    }
+
+    public BuilderTask(BuilderOptions options) {
+        this.options = options;
+    }
+
+    public void run(WorkingCopy workingCopy) throws IOException {
+        if (cancelled) {
+            return;
+        }
+        // Builders are made of the field trees as they were written, nothing
+        // needs to be attributed. The parser trees may still contain the
+        // default constructor if the file was attributed before by another
+        // task, TreeUtilities recognizes it without resolving elements.
+        long toPhaseStart = System.nanoTime();
+        workingCopy.toPhase(JavaSource.Phase.PARSED);
+        statistics.add(Phase.TO_PHASE, toPhaseStart);
+        statistics.addFile();
+        CompilationUnitTree cut = workingCopy.getCompilationUnit();
+        TreePath cutPath = new TreePath(cut);
+        WorkingCopyEditor editor = new WorkingCopyEditor(workingCopy, options.isSeparateFile() ? builderRoot(workingCopy) : null);
+        ClassGenerator<Tree> generator = new ClassGenerator<Tree>(new TreeCodeMaker(workingCopy.getTreeMaker()), editor, options);
+        FileObject file = workingCopy.getFileObject();
+        long hash = ClassModelCache.hash(workingCopy.getText());
+        Map<String, ClassModel> cached = file == null ? null : cache.get(file, hash);
+        Map<String, ClassModel> models = new HashMap<String, ClassModel>();
+
+        List<? extends Tree> typeDecls = cut.getTypeDecls();
+        for (int i = 0; i < typeDecls.size(); i++) {
+            if (cancelled) {
+                return;
+            }
+            if (util.isClassLike(typeDecls.get(i))) {
+                ClassTree clazz = (ClassTree) typeDecls.get(i);
+                processClass(workingCopy, generator, new TreePath(cutPath, clazz), clazz.getSimpleName().toString(), cached, models);
+            }
+        }
+        if (file != null && cached == null && !cancelled) {
+            cache.put(file, hash, models);
+        }
+        long start = System.nanoTime();
+        editor.flush();
+        statistics.add(Phase.REWRITE, start);
+    }
+
+    /**
+     * Generates builder for the class at given path and then for its nested
+     * classes. The members are analysed unless the cache has a model of the
+     * same file content already and all members it names are found.
+     *
+     * @param key identifies the class within the file: simple names of the
+     * type declaration and of the nested classes leading to it, e.g.
+     * <code>Order.Line</code>
+     */
+    private void processClass(WorkingCopy workingCopy, ClassGenerator<Tree> generator, TreePath classPath, String key,
+            Map<String, ClassModel> cached, Map<String, ClassModel> models) throws IOException {
+        ClassTree clazz = (ClassTree) classPath.getLeaf();
+        Map<String, VariableTree> namedFields = new HashMap<String, VariableTree>();
+        Map<String, ClassTree> namedClasses = new HashMap<String, ClassTree>();
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.VARIABLE) {
+                namedFields.put(((VariableTree) member).getName().toString(), (VariableTree) member);
+            } else if (util.isClassLike(member)) {
+                namedClasses.put(((ClassTree) member).getSimpleName().toString(), (ClassTree) member);
+            }
+        }
+        ClassModel model = cached == null ? null : cached.get(key);
+        if (model != null && !matches(model, namedFields, namedClasses)) {
+            model = null;
+        }
+        if (model == null) {
+            model = analyze(workingCopy, classPath);
+            if (model == null) {
+                return;
+            }
+            statistics.addCacheMiss();
+        } else {
+            statistics.addCacheHit();
+        }
+        models.put(key, model);
+
+        if (util.canGenerate(clazz)) {
+            List<VariableTree> fields = new ArrayList<VariableTree>();
+            Map<String, CollectionKind> collections = new HashMap<String, CollectionKind>();
+            String[] fieldNames = model.getFields();
+            for (int i = 0; i < fieldNames.length; i++) {
+                fields.add(namedFields.get(fieldNames[i]));
+                CollectionKind kind = model.getCollectionKinds()[i];
+                if (options.isCollections() && kind != null) {
+                    collections.put(fieldNames[i], kind);
+                }
+            }
+            statistics.addClass(fields.size());
+            Tree superclass = options.isHierarchy() ? superclassWithBuilder(workingCopy, classPath) : null;
+            boolean topLevel = classPath.getParentPath().getLeaf().getKind() == Tree.Kind.COMPILATION_UNIT;
+            long start = System.nanoTime();
+            long allocated = GenerationStatistics.allocatedBytes();
+            if (!generator.generate(clazz, fields, collections, model.hasEmptyConstructor(), superclass, topLevel)) {
+                StatusDisplayer.getDefault().setStatusText(
+                        clazz.getSimpleName() + ": " + ClassGenerator.REORDERED_CONSTRUCTOR);
+            }
+            statistics.addAllocated(allocated);
+            statistics.add(Phase.BUILD_CLASS, start);
+        }
+        for (String name : model.getNestedClasses()) {
+            if (cancelled) {
+                return;
+            }
+            processClass(workingCopy, generator, new TreePath(classPath, namedClasses.get(name)), key + "." + name, cached, models);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if every field and nested class the model
+     * names is a member of the class, otherwise the model is analysed again
+     */
+    private static boolean matches(ClassModel model, Map<String, VariableTree> namedFields, Map<String, ClassTree> namedClasses) {
+        for (String name : model.getFields()) {
+            if (!namedFields.containsKey(name)) {
+                return false;
+            }
+        }
+        for (String name : model.getNestedClasses()) {
+            if (!namedClasses.containsKey(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visits every member of the class once, the same loop collects the
+     * fields, the nested classes to continue with and the constructor state.
+     *
+     * @return model of the class, <code>null</code> when cancelled
+     */
+    private ClassModel analyze(WorkingCopy workingCopy, TreePath classPath) {
+        ClassTree clazz = (ClassTree) classPath.getLeaf();
+        boolean generate = util.canGenerate(clazz);
+        TreeUtilities treeUtilities = workingCopy.getTreeUtilities();
+        List<? extends ImportTree> cutImports = classPath.getCompilationUnit().getImports();
+        List<String> fields = new ArrayList<String>();
+        List<CollectionKind> collectionKinds = new ArrayList<CollectionKind>();
+        List<String> nestedClasses = new ArrayList<String>();
+        boolean hasEmptyConstructor = false;
+        long start = System.nanoTime();
+        List<? extends Tree> members = clazz.getMembers();
+        for (int i = 0; i < members.size(); i++) {
+            if (cancelled) {
+                return null;
+            }
+            Tree memTree = members.get(i);
+            if (generate && Tree.Kind.VARIABLE == memTree.getKind()) {
+                VariableTree var = (VariableTree) memTree;
+                if(util.canProcess(var)) {
+                    fields.add(var.getName().toString());
+                    collectionKinds.add(CollectionKind.of(var, cutImports));
+                }
+            }
+
+            if (memTree.getKind() == Tree.Kind.METHOD) {
+                MethodTree mt = (MethodTree) memTree;
+                if (isEmptyConstructor(mt)) {
+                    long scanStart = System.nanoTime();
+                    if (!treeUtilities.isSynthetic(new TreePath(classPath, mt))) {
+                        hasEmptyConstructor = true;
+                    }
+                    statistics.add(Phase.CONSTRUCTOR_SCAN, scanStart);
+                }
+            }
+
+            if (util.isClassLike(memTree) && util.canHaveBuilder(clazz, (ClassTree) memTree)) {
+                nestedClasses.add(((ClassTree) memTree).getSimpleName().toString());
+            }
+        }
+        statistics.add(Phase.FIELD_COLLECTION, start);
+        return new ClassModel(fields.toArray(new String[fields.size()]),
+                collectionKinds.toArray(new CollectionKind[collectionKinds.size()]),
+                nestedClasses.toArray(new String[nestedClasses.size()]),
+                hasEmptyConstructor);
+    }
+
+    /**
+     * Only classes with an <code>extends</code> clause need the file to be
+     * attributed, it is done on the first of them. The superclass has an
+     * abstract builder if it is an abstract class which either declares a
+     * <code>Builder</code> already or is a source of the same project, so
+     * it gets one when generated as well.
+     *
+     * @return the <code>extends</code> clause if the superclass has or will
+     * have an abstract builder, <code>null</code> otherwise
+     */
+    private Tree superclassWithBuilder(WorkingCopy workingCopy, TreePath classPath) throws IOException {
+        Tree extendsClause = ((ClassTree) classPath.getLeaf()).getExtendsClause();
+        if (extendsClause == null) {
+            return null;
+        }
+        if (workingCopy.getPhase().compareTo(JavaSource.Phase.ELEMENTS_RESOLVED) < 0) {
+            long start = System.nanoTime();
+            workingCopy.toPhase(JavaSource.Phase.ELEMENTS_RESOLVED);
+            statistics.add(Phase.TO_PHASE, start);
+        }
+        Element element = workingCopy.getTrees().getElement(classPath);
+        if (element == null || !element.getKind().isClass()) {
+            return null;
+        }
+        TypeMirror superType = ((TypeElement) element).getSuperclass();
+        if (superType.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement superElement = (TypeElement) ((DeclaredType) superType).asElement();
+        if (superElement.getKind() != ElementKind.CLASS || !superElement.getModifiers().contains(Modifier.ABSTRACT)) {
+            return null;
+        }
+        for (Element member : superElement.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.CLASS && BuilderUpdater.isBuilderName(member.getSimpleName())) {
+                return extendsClause;
+            }
+        }
+        Element outermost = superElement;
+        while (outermost.getEnclosingElement() != null && outermost.getEnclosingElement().getKind().isClass()) {
+            outermost = outermost.getEnclosingElement();
+        }
+        String resource = workingCopy.getElements().getBinaryName((TypeElement) outermost).toString().replace('.', '/') + ".java";
+        ClassPath sources = ClassPath.getClassPath(workingCopy.getFileObject(), ClassPath.SOURCE);
+        return sources != null && sources.findResource(resource) != null ? extendsClause : null;
+    }
+
+    /**
+     * @return source root of the file, or the configured folder for
+     * generated sources within its project, created if missing;
+     * <code>null</code> if neither can be found
+     */
+    private FileObject builderRoot(WorkingCopy workingCopy) throws IOException {
+        FileObject file = workingCopy.getFileObject();
+        if (file == null) {
+            return null;
+        }
+        String generated = options.getGeneratedSourcesRoot();
+        if (generated.length() == 0) {
+            ClassPath sources = ClassPath.getClassPath(file, ClassPath.SOURCE);
+            return sources == null ? null : sources.findOwnerRoot(file);
+        }
+        Project project = FileOwnerQuery.getOwner(file);
+        return project == null ? null : FileUtil.createFolder(project.getProjectDirectory(), generated);
+    }
+
+    public GenerationStatistics.Run getStatistics() {
+        return statistics;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private boolean isEmptyConstructor(MethodTree mt) {
+        return mt.getName().toString().equals("<init>") 
+                && mt.getReturnType() == null
+                && mt.getParameters().isEmpty();
+    }
+}
@@ -0,0 +1,157 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder;
+
+import arig.nb.modules.builder.core.CollectionKind;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Remembers what {@link BuilderTask} found out about the classes of a file:
+ * which members are builder fields and nested classes, and whether a hand
+ * written parameterless constructor exists. Members are stored by their
+ * names, trees are never kept: a later parse of the same text may hold
+ * other members, e.g. the default constructor once the file was
+ * attributed, so positions would not do. An entry is valid only as long as
+ * the hash of the file content matches, and the user of a model still
+ * checks that each named member is there and of the expected kind.
+ * <p>
+ * The cache holds at most {@link #MAX_FILES} files, the least recently used
+ * one is dropped first.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public final class ClassModelCache {
+
+    public static final int MAX_FILES = 1000;
+    private static final ClassModelCache DEFAULT = new ClassModelCache(MAX_FILES);
+    private final Map<FileObject, FileModel> files;
+
+    ClassModelCache(final int maxFiles) {
+        this.files = new LinkedHashMap<FileObject, FileModel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FileObject, FileModel> eldest) {
+                return size() > maxFiles;
+            }
+        };
+    }
+
+    public static ClassModelCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param file analysed file
+     * @param hash hash of its content, see {@link #hash(CharSequence)}
+     * @return models of the classes by {@link BuilderTask} class key, or
+     * <code>null</code> if the file with this content was not analysed yet
+     */
+    public synchronized Map<String, ClassModel> get(FileObject file, long hash) {
+        FileModel model = files.get(file);
+        if (model == null || model.hash != hash) {
+            return null;
+        }
+        return model.classes;
+    }
+
+    public synchronized void put(FileObject file, long hash, Map<String, ClassModel> classes) {
+        files.put(file, new FileModel(hash, Collections.unmodifiableMap(classes)));
+    }
+
+    public synchronized void clear() {
+        files.clear();
+    }
+
+    /**
+     * @return 64 bit FNV-1a hash of the text, collisions of the 32 bit
+     * <code>String.hashCode()</code> are too likely on large projects
+     */
+    public static long hash(CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash ^ text.length();
+    }
+
+    private static final class FileModel {
+
+        private final long hash;
+        private final Map<String, ClassModel> classes;
+
+        FileModel(long hash, Map<String, ClassModel> classes) {
+            this.hash = hash;
+            this.classes = classes;
+        }
+    }
+
+    /**
+     * Analysed shape of one class, members are referred to by their simple
+     * names.
+     */
+    public static final class ClassModel {
+
+        private final String[] fields;
+        private final CollectionKind[] collectionKinds;
+        private final String[] nestedClasses;
+        private final boolean emptyConstructor;
+
+        /**
+         * @param fields names of the builder fields
+         * @param collectionKinds kinds of the builder fields, in the same
+         * order, <code>null</code> for non collection fields
+         * @param nestedClasses names of the nested classes to descend into
+         * @param emptyConstructor whether a hand written parameterless
+         * constructor exists
+         */
+        public ClassModel(String[] fields, CollectionKind[] collectionKinds, String[] nestedClasses, boolean emptyConstructor) {
+            this.fields = fields;
+            this.collectionKinds = collectionKinds;
+            this.nestedClasses = nestedClasses;
+            this.emptyConstructor = emptyConstructor;
+        }
+
+        public String[] getFields() {
+            return fields;
+        }
+
+        public CollectionKind[] getCollectionKinds() {
+            return collectionKinds;
+        }
+
+        public String[] getNestedClasses() {
+            return nestedClasses;
+        }
+
+        public boolean hasEmptyConstructor() {
+            return emptyConstructor;
+        }
+    }
+}
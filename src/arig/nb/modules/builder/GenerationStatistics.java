@@ -0,0 +1,345 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timings and counters of builder generation, accumulated over all runs of
+ * the IDE session. Each run is logged to the
+ * <code>arig.nb.modules.builder.GenerationStatistics</code> logger at
+ * {@link Level#FINE} with the numbers as record parameters, failures at
+ * {@link Level#WARNING}. The totals are published through JMX.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public final class GenerationStatistics implements GenerationStatisticsMBean {
+
+    public enum Phase {
+
+        /** parsing the file, <code>WorkingCopy.toPhase</code> */
+        TO_PHASE,
+        /** telling hand written parameterless constructors from synthetic ones */
+        CONSTRUCTOR_SCAN,
+        /**
+         * scanning class members for fields and nested classes, includes
+         * {@link #CONSTRUCTOR_SCAN}
+         */
+        FIELD_COLLECTION,
+        /**
+         * creating the trees of the builder and of the members using it, or
+         * updating an existing builder
+         */
+        BUILD_CLASS,
+        /** <code>WorkingCopy.rewrite</code> of the changed classes and imports */
+        REWRITE,
+        /** <code>ModificationResult.commit</code> */
+        COMMIT
+    }
+
+    public static final String OBJECT_NAME = "arig.nb.modules.builder:type=GenerationStatistics";
+    private static final Logger LOG = Logger.getLogger(GenerationStatistics.class.getName());
+    private static final long[] HISTOGRAM_BOUNDS = {10, 50, 100, 500, 1000, 5000};
+    private static final GenerationStatistics DEFAULT = new GenerationStatistics();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong classes = new AtomicLong();
+    private final AtomicLong fields = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong generatedBytes = new AtomicLong();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BOUNDS.length + 1);
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(DEFAULT, name);
+            }
+        } catch (JMException ex) {
+            LOG.log(Level.INFO, "Cannot register " + OBJECT_NAME, ex);
+        }
+    }
+
+    private GenerationStatistics() {
+    }
+
+    public static GenerationStatistics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return recorder of a new run, e.g. one "Generate builder" invocation
+     */
+    public Run start() {
+        return new Run();
+    }
+
+    public long getRuns() {
+        return runs.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getClasses() {
+        return classes.get();
+    }
+
+    public long getFields() {
+        return fields.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public long getGeneratedBytes() {
+        return generatedBytes.get();
+    }
+
+    public long getGeneratedBytesPerField() {
+        long fieldCount = fields.get();
+        return fieldCount == 0 ? 0 : generatedBytes.get() / fieldCount;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1 if the JVM
+     * can not tell
+     */
+    public static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public String[] getPhaseTimes() {
+        Phase[] phases = Phase.values();
+        String[] times = new String[phases.length];
+        for (Phase phase : phases) {
+            times[phase.ordinal()] = phase + "=" + TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase.ordinal()));
+        }
+        return times;
+    }
+
+    public long[] getRunHistogram() {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    public String[] getRunHistogramBuckets() {
+        String[] buckets = new String[HISTOGRAM_BOUNDS.length + 1];
+        for (int i = 0; i < HISTOGRAM_BOUNDS.length; i++) {
+            buckets[i] = "<" + HISTOGRAM_BOUNDS[i] + "ms";
+        }
+        buckets[HISTOGRAM_BOUNDS.length] = ">=" + HISTOGRAM_BOUNDS[HISTOGRAM_BOUNDS.length - 1] + "ms";
+        return buckets;
+    }
+
+    public void reset() {
+        runs.set(0);
+        failures.set(0);
+        files.set(0);
+        classes.set(0);
+        fields.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        generatedBytes.set(0);
+        for (int i = 0; i < phaseNanos.length(); i++) {
+            phaseNanos.set(i, 0);
+        }
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    private void add(Run run, long durationMillis) {
+        runs.incrementAndGet();
+        files.addAndGet(run.files);
+        classes.addAndGet(run.classes);
+        fields.addAndGet(run.fields);
+        cacheHits.addAndGet(run.cacheHits);
+        cacheMisses.addAndGet(run.cacheMisses);
+        generatedBytes.addAndGet(run.generatedBytes);
+        for (int i = 0; i < run.phaseNanos.length; i++) {
+            phaseNanos.addAndGet(i, run.phaseNanos[i]);
+        }
+        int bucket = 0;
+        while (bucket < HISTOGRAM_BOUNDS.length && durationMillis >= HISTOGRAM_BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Numbers of a single run. A run is recorded by one thread at a time,
+     * handing it over to another thread, e.g. for the commit in AWT thread,
+     * must go through a happens-before edge such as
+     * <code>invokeLater</code>.
+     */
+    public final class Run {
+
+        private final long startNanos = System.nanoTime();
+        private final long[] phaseNanos = new long[Phase.values().length];
+        private int files;
+        private int classes;
+        private int fields;
+        private int cacheHits;
+        private int cacheMisses;
+        private long generatedBytes;
+        private boolean finished;
+
+        private Run() {
+        }
+
+        /**
+         * Adds the time elapsed since <code>sinceNanos</code>, a value of
+         * {@link System#nanoTime()}, to the phase.
+         */
+        public void add(Phase phase, long sinceNanos) {
+            phaseNanos[phase.ordinal()] += System.nanoTime() - sinceNanos;
+        }
+
+        public void addFile() {
+            files++;
+        }
+
+        public void addClass(int classFields) {
+            classes++;
+            fields += classFields;
+        }
+
+        /**
+         * Counts a class whose analysis was taken from
+         * {@link ClassModelCache}.
+         */
+        public void addCacheHit() {
+            cacheHits++;
+        }
+
+        public void addCacheMiss() {
+            cacheMisses++;
+        }
+
+        /**
+         * Adds the bytes allocated by the current thread since
+         * <code>sinceBytes</code>, a value of {@link #allocatedBytes()}.
+         */
+        public void addAllocated(long sinceBytes) {
+            if (sinceBytes >= 0) {
+                generatedBytes += allocatedBytes() - sinceBytes;
+            }
+        }
+
+        /**
+         * Merges numbers of a run recorded by another thread, e.g. a batch
+         * worker, into this one. The other run is not finished, so it counts
+         * only through this run.
+         */
+        public void add(Run other) {
+            for (int i = 0; i < phaseNanos.length; i++) {
+                phaseNanos[i] += other.phaseNanos[i];
+            }
+            files += other.files;
+            classes += other.classes;
+            fields += other.fields;
+            cacheHits += other.cacheHits;
+            cacheMisses += other.cacheMisses;
+            generatedBytes += other.generatedBytes;
+        }
+
+        /**
+         * Adds the run to the totals and logs it. Only the first call of
+         * {@link #finish()} or {@link #failed(Throwable)} counts.
+         */
+        public void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            GenerationStatistics.this.add(this, durationMillis);
+            if (LOG.isLoggable(Level.FINE)) {
+                LogRecord record = new LogRecord(Level.FINE,
+                        "Builder generation took {0} ms: files={1} classes={2} fields={3} toPhase={4} ms"
+                        + " constructorScan={5} ms fieldCollection={6} ms buildClass={7} ms rewrite={8} ms commit={9} ms"
+                        + " generated={10} bytes");
+                Object[] parameters = new Object[5 + phaseNanos.length];
+                parameters[0] = durationMillis;
+                parameters[1] = files;
+                parameters[2] = classes;
+                parameters[3] = fields;
+                for (int i = 0; i < phaseNanos.length; i++) {
+                    parameters[4 + i] = TimeUnit.NANOSECONDS.toMillis(phaseNanos[i]);
+                }
+                parameters[4 + phaseNanos.length] = generatedBytes;
+                record.setParameters(parameters);
+                record.setLoggerName(LOG.getName());
+                LOG.log(record);
+            }
+        }
+
+        public void failed(Throwable failure) {
+            if (finished) {
+                return;
+            }
+            failures.incrementAndGet();
+            LOG.log(Level.WARNING, "Builder generation failed", failure);
+            finish();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder;
+
+/**
+ * Management interface of {@link GenerationStatistics}, registered as
+ * <code>arig.nb.modules.builder:type=GenerationStatistics</code>. Times are
+ * in milliseconds and cover every run since the IDE started or since the
+ * last {@link #reset()}.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public interface GenerationStatisticsMBean {
+
+    long getRuns();
+
+    long getFailures();
+
+    long getFiles();
+
+    long getClasses();
+
+    long getFields();
+
+    /**
+     * @return classes whose analysis was found in {@link ClassModelCache}
+     */
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return bytes allocated while generating builders, not including
+     * parsing and commit, or 0 if the JVM does not measure allocations
+     */
+    long getGeneratedBytes();
+
+    /**
+     * @return {@link #getGeneratedBytes()} divided by {@link #getFields()},
+     * the number to watch for allocation regressions
+     */
+    long getGeneratedBytesPerField();
+
+    /**
+     * @return total time per phase, e.g. <code>TO_PHASE=120</code>, in the
+     * order of {@link GenerationStatistics.Phase}
+     */
+    String[] getPhaseTimes();
+
+    /**
+     * @return number of runs whose duration fell into each of
+     * {@link #getRunHistogramBuckets()}
+     */
+    long[] getRunHistogram();
+
+    String[] getRunHistogramBuckets();
+
+    void reset();
+}
@@ -0,0 +1,164 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeParameterTree;
+import java.util.List;
+
+/**
+ * Naming rules shared by every generator flavour, so that the IDE action and
+ * the headless generator produce the same API.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class BuilderNames {
+
+    public static final String BUILDER_CLASS_NAME = "Builder";
+    public static final String BUILDER_PARAMETER_NAME = BUILDER_CLASS_NAME.toLowerCase();
+    public static final String BUILDER_METHOD_NAME = "builder";
+    public static final String BUILD_METHOD_NAME = "build";
+    public static final String RESET_METHOD_NAME = "reset";
+    public static final String TO_BUILDER_METHOD_NAME = "toBuilder";
+    public static final String COPY_VARIABLE_NAME = "obj";
+    public static final String STEP_SUFFIX = "Step";
+    public static final String BUILD_STEP_NAME = "Build" + STEP_SUFFIX;
+    public static final String SELF_METHOD_NAME = "self";
+    public static final String TARGET_TYPE_PARAMETER = "T";
+    public static final String SELF_TYPE_PARAMETER = "B";
+    public static final String THREAD_BUILDER_FIELD_NAME = "THREAD_BUILDER";
+    public static final String DEFAULT_PREFIX = "with";
+    public static final String CONSTRUCTOR_NAME = "<init>";
+    public static final String READ_FROM_METHOD_NAME = "readFrom";
+    public static final String WRITE_TO_METHOD_NAME = "writeTo";
+    public static final String PARSER_PARAMETER_NAME = "parser";
+    public static final String GENERATOR_PARAMETER_NAME = "generator";
+
+    private BuilderNames() {
+    }
+
+    public static String methodName(String prefix, String fieldName) {
+        String methodName = null;
+        if(prefix != null && !prefix.isEmpty()){
+            methodName = prefix + fieldName.subSequence(0, 1).toString().toUpperCase();
+            methodName += fieldName.substring(1);
+        } else {
+            methodName = fieldName;
+        }
+        return methodName;
+    }
+
+    /**
+     * @return name of the builder generated into a file of its own, e.g.
+     * <code>PersonBuilder</code>
+     */
+    public static String builderFileName(String className) {
+        return className + BUILDER_CLASS_NAME;
+    }
+
+    /**
+     * @return name of the staged builder interface setting given required
+     * field, e.g. <code>NameStep</code> for <code>name</code>
+     */
+    public static String stepName(String fieldName) {
+        return fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1) + STEP_SUFFIX;
+    }
+
+    /**
+     * @return type arguments matching given type parameters, e.g.
+     * <code>&lt;K,V&gt;</code>, or an empty string for no parameters
+     */
+    public static String typeArguments(List<? extends TypeParameterTree> parameters) {
+        return typeArguments(parameters, new String[0]);
+    }
+
+    /**
+     * @return type arguments matching given type parameters followed by
+     * the extra ones, e.g. <code>&lt;K,V,T,B&gt;</code>
+     */
+    public static String typeArguments(List<? extends TypeParameterTree> parameters, String... extra) {
+        if (parameters.isEmpty() && extra.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("<");
+        for (TypeParameterTree parameterTree : parameters) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(parameterTree.getName());
+        }
+        for (String argument : extra) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(argument);
+        }
+        return sb.append('>').toString();
+    }
+
+    /**
+     * @return <code>name</code>, followed by a number if the class already
+     * declares a type parameter of that name
+     */
+    public static String typeParameterName(String name, List<? extends TypeParameterTree> parameters) {
+        String unique = name;
+        for (int i = 1; declares(parameters, unique); i++) {
+            unique = name + i;
+        }
+        return unique;
+    }
+
+    /**
+     * @return builder of the superclass with the type arguments of the
+     * <code>extends</code> clause followed by <code>target</code> and
+     * <code>self</code>, e.g. <code>Event.Builder&lt;String,T,B&gt;</code>
+     * for <code>Event&lt;String&gt;</code>
+     */
+    public static String superBuilderType(Tree superclass, String target, String self) {
+        StringBuilder sb = new StringBuilder();
+        if (superclass.getKind() == Tree.Kind.PARAMETERIZED_TYPE) {
+            ParameterizedTypeTree parameterized = (ParameterizedTypeTree) superclass;
+            sb.append(parameterized.getType()).append('.').append(BUILDER_CLASS_NAME).append('<');
+            for (Tree argument : parameterized.getTypeArguments()) {
+                sb.append(argument).append(',');
+            }
+        } else {
+            sb.append(superclass).append('.').append(BUILDER_CLASS_NAME).append('<');
+        }
+        return sb.append(target).append(',').append(self).append('>').toString();
+    }
+
+    private static boolean declares(List<? extends TypeParameterTree> parameters, String name) {
+        for (TypeParameterTree parameter : parameters) {
+            if (name.contentEquals(parameter.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,188 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+/**
+ * Output style of the generated builder. Defaults produce the plain builder
+ * the generator always created plus <code>toBuilder()</code> on the target
+ * class, see {@link #isToBuilder()}; every other option is off.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class BuilderOptions {
+
+    private String methodPrefix = BuilderNames.DEFAULT_PREFIX;
+    private boolean reusable;
+    private boolean threadLocal;
+    private boolean collections;
+    private boolean toBuilder = true;
+    private boolean copyMethods;
+    private boolean staged;
+    private boolean hierarchy;
+    private boolean separateFile;
+    private String generatedSourcesRoot = "";
+    private boolean streaming;
+
+    public String getMethodPrefix() {
+        return methodPrefix;
+    }
+
+    public void setMethodPrefix(String methodPrefix) {
+        this.methodPrefix = methodPrefix;
+    }
+
+    /**
+     * Reusable builders get a <code>reset()</code> method restoring the
+     * initial field values, so one instance can build any number of objects.
+     */
+    public boolean isReusable() {
+        return reusable || threadLocal;
+    }
+
+    public void setReusable(boolean reusable) {
+        this.reusable = reusable;
+    }
+
+    /**
+     * <code>builder()</code> hands out one reset builder per thread instead
+     * of allocating a new one. Implies {@link #isReusable()}. A builder
+     * obtained this way must not be kept nor shared, the next
+     * <code>builder()</code> call in the same thread resets it.
+     */
+    public boolean isThreadLocal() {
+        return threadLocal;
+    }
+
+    public void setThreadLocal(boolean threadLocal) {
+        this.threadLocal = threadLocal;
+    }
+
+    /**
+     * <code>List</code>, <code>Set</code> and <code>Map</code> fields get
+     * <code>addX</code>/<code>putX</code> methods filling a lazily created
+     * builder collection, and the built object gets an unmodifiable copy.
+     */
+    public boolean isCollections() {
+        return collections;
+    }
+
+    public void setCollections(boolean collections) {
+        this.collections = collections;
+    }
+
+    /**
+     * The target class gets <code>toBuilder()</code> returning a new builder
+     * filled with the values of the object. On by default.
+     */
+    public boolean isToBuilder() {
+        return toBuilder;
+    }
+
+    public void setToBuilder(boolean toBuilder) {
+        this.toBuilder = toBuilder;
+    }
+
+    /**
+     * The target class gets a <code>withX(value)</code> method per field
+     * returning a copy with that one field changed, without going through a
+     * builder.
+     */
+    public boolean isCopyMethods() {
+        return copyMethods;
+    }
+
+    public void setCopyMethods(boolean copyMethods) {
+        this.copyMethods = copyMethods;
+    }
+
+    /**
+     * Classes with required fields get a staged builder: one interface per
+     * required field, so that <code>build()</code> can only be called once
+     * all of them were set. See
+     * {@link arig.nb.modules.builder.utils.Util#isRequired}.
+     */
+    public boolean isStaged() {
+        return staged;
+    }
+
+    public void setStaged(boolean staged) {
+        this.staged = staged;
+    }
+
+    /**
+     * Abstract classes get an abstract, self-typed builder and subclasses
+     * of such a class extend its builder, so inherited fields are set
+     * through the setters of the superclass builder.
+     */
+    public boolean isHierarchy() {
+        return hierarchy;
+    }
+
+    public void setHierarchy(boolean hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Top level classes get their builder in a file of its own,
+     * <code>XBuilder.java</code>, and only a package-private constructor
+     * taking it. Class hierarchies and staged builders stay nested.
+     */
+    public boolean isSeparateFile() {
+        return separateFile;
+    }
+
+    public void setSeparateFile(boolean separateFile) {
+        this.separateFile = separateFile;
+    }
+
+    /**
+     * @return folder the separate builder files go to, relative to the
+     * project directory (or to the working directory of the headless
+     * generator), or an empty string to put them next to their class
+     */
+    public String getGeneratedSourcesRoot() {
+        return generatedSourcesRoot;
+    }
+
+    public void setGeneratedSourcesRoot(String generatedSourcesRoot) {
+        this.generatedSourcesRoot = generatedSourcesRoot == null ? "" : generatedSourcesRoot.trim();
+    }
+
+    /**
+     * Builders get <code>readFrom(JsonParser)</code> filling them from the
+     * Jackson streaming API and classes get <code>writeTo(JsonGenerator)</code>,
+     * see {@link JsonKind}. Not generated for staged builders and class
+     * hierarchies.
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+}
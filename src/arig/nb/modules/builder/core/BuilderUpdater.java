@@ -0,0 +1,747 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionStatementTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Brings a previously generated builder in line with the current fields of
+ * its class. Only members which differ are touched: missing fields, setters
+ * and constructor lines are added, the ones of removed fields are removed and
+ * the ones whose type or collection kind changed are replaced, together with
+ * their adders. The builder of a record or of a class with final fields has
+ * its <code>build()</code> and the all-args constructor replaced instead of
+ * the constructor lines. Everything else, including any
+ * hand made change to the builder, is left as it is.
+ *
+ * @param <T> element of the generated code, see {@link CodeMaker}
+ * @author Arkadiusz Gabiga
+ */
+public class BuilderUpdater<T> {
+
+    private final CodeEditor<T> editor;
+    private final ClassBuilder<T> cb;
+    private final Util util = new Util();
+    private final List<String> removedFields = new ArrayList<String>();
+    private final Set<String> retypedFields = new HashSet<String>();
+    private final Set<Tree> removed = Collections.newSetFromMap(new IdentityHashMap<Tree, Boolean>());
+    private boolean fieldsChanged;
+
+    public BuilderUpdater(CodeEditor<T> editor, ClassBuilder<T> cb) {
+        this.editor = editor;
+        this.cb = cb;
+    }
+
+    /**
+     * @return the nested builder class of <code>clazz</code>, or
+     * <code>null</code> if it has none yet
+     */
+    public static ClassTree findBuilder(ClassTree clazz) {
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.CLASS && isBuilderName(((ClassTree) member).getSimpleName())) {
+                return (ClassTree) member;
+            }
+        }
+        return null;
+    }
+
+    public static boolean isBuilderName(CharSequence name) {
+        return BuilderNames.BUILDER_CLASS_NAME.contentEquals(name);
+    }
+
+    /**
+     * @return <code>true</code> if the builder can be updated member by
+     * member, <code>false</code> if it has to be replaced, see
+     * {@link #replace}. That includes a builder whose <code>build()</code>
+     * constructs the class the other way than it has to now, e.g. once the
+     * last <code>final</code> field is gone.
+     */
+    public boolean canUpdate(ClassTree builder) {
+        return !cb.isStaged() && !cb.isHierarchy()
+                && builder.getImplementsClause().isEmpty()
+                && builder.getExtendsClause() == null
+                && !builder.getModifiers().getFlags().contains(Modifier.ABSTRACT)
+                && isDirectBuild(builder, cb.isDirectConstruction()) == cb.isDirectConstruction();
+    }
+
+    /**
+     * @param otherwise result for a builder without a generated looking
+     * <code>build()</code>
+     * @return <code>true</code> if <code>build()</code> returns
+     * <code>new X(...)</code> passing the fields, <code>false</code> if it
+     * passes the builder, <code>new X(this)</code>
+     */
+    private static boolean isDirectBuild(ClassTree builder, boolean otherwise) {
+        NewClassTree newInstance = builtInstance(builder);
+        if (newInstance == null) {
+            return otherwise;
+        }
+        List<? extends ExpressionTree> arguments = newInstance.getArguments();
+        return arguments.size() != 1 || arguments.get(0).getKind() != Tree.Kind.IDENTIFIER
+                || !"this".contentEquals(((IdentifierTree) arguments.get(0)).getName());
+    }
+
+    /**
+     * @return <code>new X(...)</code> returned by the single statement of
+     * <code>build()</code>, or <code>null</code>
+     */
+    private static NewClassTree builtInstance(ClassTree builder) {
+        MethodTree build = findMethod(builder, BuilderNames.BUILD_METHOD_NAME);
+        if (build == null || build.getBody() == null || build.getBody().getStatements().size() != 1
+                || build.getBody().getStatements().get(0).getKind() != Tree.Kind.RETURN) {
+            return null;
+        }
+        ExpressionTree expression = ((ReturnTree) build.getBody().getStatements().get(0)).getExpression();
+        return expression != null && expression.getKind() == Tree.Kind.NEW_CLASS ? (NewClassTree) expression : null;
+    }
+
+    /**
+     * @return names of the builder fields passed by <code>build()</code>, in
+     * the order of the constructor parameters
+     */
+    private static List<String> builtFields(ClassTree builder) {
+        final List<String> names = new ArrayList<String>();
+        NewClassTree newInstance = builtInstance(builder);
+        if (newInstance == null) {
+            return names;
+        }
+        for (ExpressionTree argument : newInstance.getArguments()) {
+            final List<String> selected = new ArrayList<String>(1);
+            argument.accept(new TreeScanner<Void, Void>() {
+                @Override
+                public Void visitMemberSelect(MemberSelectTree node, Void p) {
+                    if (selected.isEmpty() && node.getExpression().getKind() == Tree.Kind.IDENTIFIER
+                            && "this".contentEquals(((IdentifierTree) node.getExpression()).getName())) {
+                        selected.add(node.getIdentifier().toString());
+                    }
+                    return super.visitMemberSelect(node, p);
+                }
+            }, null);
+            names.add(selected.isEmpty() ? null : selected.get(0));
+        }
+        return names;
+    }
+
+    /**
+     * Updates the builder and the members of <code>clazz</code> which use
+     * it through the editor.
+     */
+    public void update(ClassTree clazz, ClassTree builder, List<VariableTree> fields) {
+        Map<String, VariableTree> current = new LinkedHashMap<String, VariableTree>();
+        for (VariableTree field : fields) {
+            current.put(field.getName().toString(), field);
+        }
+
+        updateBuilder(builder, current);
+
+        if (cb.isDirectConstruction()) {
+            // reordered fields change every call of the constructor
+            fieldsChanged |= !builtFields(builder).equals(new ArrayList<String>(current.keySet()));
+            updateDirectConstruction(clazz, builder, fields, current);
+        } else {
+            MethodTree constructor = findBuilderConstructor(clazz);
+            if (constructor == null) {
+                editor.addMember(clazz, cb.createConstructor());
+            } else if (constructor.getBody() != null) {
+                updateConstructorBody(constructor.getBody(), current);
+            }
+        }
+        if (findMethod(clazz, BuilderNames.BUILDER_METHOD_NAME) == null) {
+            editor.insertMember(clazz, builder, cb.createBuilderMethod());
+        }
+        if (cb.getOptions().isToBuilder()) {
+            MethodTree toBuilder = findMethod(clazz, BuilderNames.TO_BUILDER_METHOD_NAME);
+            if (toBuilder == null) {
+                editor.insertMember(clazz, builder, cb.createToBuilderMethod());
+            } else if (fieldsChanged) {
+                editor.replace(toBuilder, cb.createToBuilderMethod());
+            }
+        }
+        if (cb.getOptions().isCopyMethods()) {
+            updateCopyMethods(clazz, builder, current);
+        }
+        if (cb.hasStreaming()) {
+            MethodTree writeTo = findMethod(clazz, BuilderNames.WRITE_TO_METHOD_NAME);
+            if (writeTo == null) {
+                editor.insertMember(clazz, builder, cb.createWriteToMethod());
+            } else if (fieldsChanged) {
+                editor.replace(writeTo, cb.createWriteToMethod());
+            }
+        }
+        if (cb.getOptions().isThreadLocal() && findField(clazz, BuilderNames.THREAD_BUILDER_FIELD_NAME) == null) {
+            insert(clazz, firstMember(clazz), cb.createThreadLocalField());
+        }
+    }
+
+    /**
+     * <code>build()</code> passes the fields in declaration order, so it is
+     * replaced whenever they changed, order included, and so is the all-args
+     * constructor generated for the previous fields, unless the class has a
+     * constructor taking the current ones.
+     */
+    private void updateDirectConstruction(ClassTree clazz, ClassTree builder, List<VariableTree> fields,
+            Map<String, VariableTree> current) {
+        MethodTree build = findMethod(builder, BuilderNames.BUILD_METHOD_NAME);
+        if (build != null && fieldsChanged) {
+            editor.replace(build, cb.createBuildMethod());
+        }
+        if (util.isRecord(clazz) || util.findAllArgsConstructor(clazz, fields) != null) {
+            return;
+        }
+        Set<String> names = new HashSet<String>(current.keySet());
+        names.addAll(removedFields);
+        MethodTree stale = findAssigningConstructor(clazz, names);
+        if (stale == null) {
+            editor.addMember(clazz, cb.createAllArgsConstructor());
+        } else {
+            editor.replace(stale, cb.createAllArgsConstructor());
+        }
+    }
+
+    /**
+     * Staged builders are generated anew instead: the return type of every
+     * setter and the set of stage interfaces depend on which fields are
+     * required, so the builder, its stages and the members of
+     * <code>clazz</code> using them are removed and generated again. This
+     * is also the way from a staged builder back to a plain one, and the way
+     * between a builder passing the fields to the constructor and one
+     * passing itself, in which case the constructor generated for the old
+     * way is removed. The same goes for the builders of a class hierarchy.
+     *
+     * @param hasEmptyConstructor <code>true</code> if the class declares a
+     * parameterless constructor itself
+     * @param superclass <code>extends</code> clause of a class in a
+     * hierarchy, see {@link ClassBuilder#setHierarchy}
+     */
+    public void replace(ClassTree clazz, ClassTree builder, List<VariableTree> fields, boolean hasEmptyConstructor,
+            Tree superclass) {
+        boolean wasDirect = isDirectBuild(builder, false);
+        Set<String> steps = new HashSet<String>();
+        for (Tree step : builder.getImplementsClause()) {
+            String name = step.toString();
+            int typeArguments = name.indexOf('<');
+            steps.add(typeArguments < 0 ? name : name.substring(0, typeArguments));
+        }
+        Set<String> copied = new HashSet<String>();
+        for (Tree member : builder.getMembers()) {
+            if (member.getKind() == Tree.Kind.VARIABLE) {
+                copied.add(((VariableTree) member).getName().toString());
+            }
+        }
+        for (VariableTree field : fields) {
+            copied.add(field.getName().toString());
+        }
+
+        for (Tree member : clazz.getMembers()) {
+            if (member == builder
+                    || member.getKind() == Tree.Kind.INTERFACE && steps.contains(((ClassTree) member).getSimpleName().toString())) {
+                remove(clazz, member);
+            }
+        }
+        remove(clazz, findBuilderConstructor(clazz));
+        remove(clazz, findMethod(clazz, BuilderNames.BUILDER_METHOD_NAME));
+        remove(clazz, findMethod(clazz, BuilderNames.TO_BUILDER_METHOD_NAME));
+        remove(clazz, findMethod(clazz, BuilderNames.WRITE_TO_METHOD_NAME));
+        if (cb.getOptions().isCopyMethods() || cb.isHierarchy()) {
+            for (String name : copied) {
+                remove(clazz, findCopyMethod(clazz, name));
+            }
+        }
+
+        boolean allArgs = cb.isDirectConstruction() && !util.isRecord(clazz)
+                && util.findAllArgsConstructor(clazz, fields) == null;
+        if (allArgs) {
+            remove(clazz, findAssigningConstructor(clazz, copied));
+        }
+        if (cb.isDirectConstruction() && !util.isRecord(clazz)) {
+            remove(clazz, findEmptyConstructor(clazz));
+        }
+        boolean emptyConstructor = false;
+        if (wasDirect && !cb.isDirectConstruction()) {
+            remove(clazz, findAssigningConstructor(clazz, copied));
+            // copy methods start with new X()
+            emptyConstructor = !hasEmptyConstructor && superclass == null;
+        }
+
+        if (cb.hasThreadLocal() && findField(clazz, BuilderNames.THREAD_BUILDER_FIELD_NAME) == null) {
+            insert(clazz, firstMember(clazz), cb.createThreadLocalField());
+        }
+        if (emptyConstructor) {
+            editor.addMember(clazz, cb.createEmptyConstructor());
+        }
+        if (!cb.isDirectConstruction()) {
+            editor.addMember(clazz, cb.createConstructor());
+        } else if (allArgs) {
+            editor.addMember(clazz, cb.createAllArgsConstructor());
+        }
+        if (cb.hasBuilderMethod()) {
+            editor.addMember(clazz, cb.createBuilderMethod());
+        }
+        if (cb.hasToBuilder()) {
+            editor.addMember(clazz, cb.createToBuilderMethod());
+        }
+        if (cb.hasCopyMethods()) {
+            for (T copyMethod : cb.createCopyMethods()) {
+                editor.addMember(clazz, copyMethod);
+            }
+        }
+        if (cb.hasStreaming()) {
+            editor.addMember(clazz, cb.createWriteToMethod());
+        }
+        if (cb.isStaged()) {
+            for (T step : cb.createStepInterfaces()) {
+                editor.addMember(clazz, step);
+            }
+        }
+        editor.addMember(clazz, cb.buildClass());
+    }
+
+    /**
+     * Every copy method assigns all fields, so all of them are replaced once
+     * the fields change.
+     */
+    private void updateCopyMethods(ClassTree clazz, ClassTree builder, Map<String, VariableTree> current) {
+        for (String name : removedFields) {
+            remove(clazz, findCopyMethod(clazz, name));
+        }
+        for (VariableTree field : current.values()) {
+            MethodTree copyMethod = findCopyMethod(clazz, field.getName().toString());
+            if (copyMethod == null) {
+                editor.insertMember(clazz, builder, cb.createCopyMethod(field));
+            } else if (fieldsChanged) {
+                editor.replace(copyMethod, cb.createCopyMethod(field));
+            }
+        }
+    }
+
+    /**
+     * @return constructor generated for a previous set of fields: one
+     * parameter per field and nothing but <code>this.x = x;</code> in the
+     * body. Hand written constructors doing anything more are kept.
+     */
+    private MethodTree findAssigningConstructor(ClassTree clazz, Set<String> fieldNames) {
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() != Tree.Kind.METHOD) {
+                continue;
+            }
+            MethodTree method = (MethodTree) member;
+            if (isAssigningConstructor(method, fieldNames)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return <code>true</code> for a constructor with one parameter per
+     * field, given by <code>fieldNames</code>, and nothing but
+     * <code>this.x = x;</code> in the body
+     */
+    static boolean isAssigningConstructor(MethodTree method, Set<String> fieldNames) {
+        if (!BuilderNames.CONSTRUCTOR_NAME.contentEquals(method.getName()) || method.getBody() == null
+                || method.getParameters().isEmpty()
+                || method.getParameters().size() != method.getBody().getStatements().size()) {
+            return false;
+        }
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            String name = method.getParameters().get(i).getName().toString();
+            StatementTree statement = method.getBody().getStatements().get(i);
+            if (!fieldNames.contains(name) || !name.equals(assignedField(statement))
+                    || !name.equals(assignedValue(statement))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return parameterless constructor with an empty body, as generated for
+     * a class without final fields, which can not stay once a field is
+     * final
+     */
+    static MethodTree findEmptyConstructor(ClassTree clazz) {
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.METHOD) {
+                MethodTree method = (MethodTree) member;
+                if (BuilderNames.CONSTRUCTOR_NAME.contentEquals(method.getName()) && method.getParameters().isEmpty()
+                        && method.getBody() != null && method.getBody().getStatements().isEmpty()) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    private MethodTree findCopyMethod(ClassTree clazz, String fieldName) {
+        String name = BuilderNames.methodName(cb.getOptions().getMethodPrefix(), fieldName);
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.METHOD) {
+                MethodTree method = (MethodTree) member;
+                if (name.contentEquals(method.getName())
+                        && method.getParameters().size() == 1
+                        && fieldName.contentEquals(method.getParameters().get(0).getName())) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * New fields go after the last field of the builder, new setters in
+     * front of <code>reset()</code> or <code>build()</code>, whichever
+     * comes first.
+     */
+    private void updateBuilder(ClassTree builder, Map<String, VariableTree> current) {
+        Map<String, VariableTree> builderFields = new HashMap<String, VariableTree>();
+        Map<String, MethodTree> setters = new HashMap<String, MethodTree>();
+        for (Tree member : builder.getMembers()) {
+            if (member.getKind() == Tree.Kind.VARIABLE) {
+                VariableTree var = (VariableTree) member;
+                builderFields.put(var.getName().toString(), var);
+            }
+        }
+        for (Tree member : builder.getMembers()) {
+            if (member.getKind() == Tree.Kind.METHOD) {
+                MethodTree method = (MethodTree) member;
+                if (method.getParameters().size() == 1) {
+                    String parameterName = method.getParameters().get(0).getName().toString();
+                    if (builderFields.containsKey(parameterName) && !isAdder(method, parameterName)) {
+                        setters.put(parameterName, method);
+                    }
+                }
+            }
+        }
+
+        boolean changed = false;
+        for (Map.Entry<String, VariableTree> entry : builderFields.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                changed = true;
+                removedFields.add(entry.getKey());
+                remove(builder, entry.getValue());
+                remove(builder, setters.get(entry.getKey()));
+                for (CollectionKind kind : CollectionKind.values()) {
+                    remove(builder, findMethod(builder, kind.adderName(entry.getKey())));
+                }
+            }
+        }
+
+        Tree fieldAnchor = fieldAnchor(builder);
+        for (VariableTree field : current.values()) {
+            VariableTree builderField = builderFields.get(field.getName().toString());
+            if (builderField == null) {
+                changed = true;
+                insert(builder, fieldAnchor, cb.createBuilderField(field));
+            } else if (!sameType(builderField, field) || !sameCollectionKind(builder, field)) {
+                changed = true;
+                retypedFields.add(field.getName().toString());
+                editor.replace(builderField, cb.createBuilderField(field));
+            }
+        }
+
+        Tree setterAnchor = setterAnchor(builder);
+        for (VariableTree field : current.values()) {
+            String name = field.getName().toString();
+            MethodTree setter = setters.get(name);
+            boolean retyped = retypedFields.contains(name);
+            if (setter == null) {
+                insert(builder, setterAnchor, cb.createSetter(field));
+            } else if (retyped || !sameType(setter.getParameters().get(0), field)) {
+                editor.replace(setter, cb.createSetter(field));
+            }
+            String adderName = adderName(field);
+            if (retyped) {
+                for (CollectionKind kind : CollectionKind.values()) {
+                    if (!kind.adderName(name).equals(adderName)) {
+                        remove(builder, findMethod(builder, kind.adderName(name)));
+                    }
+                }
+            }
+            if (adderName != null) {
+                MethodTree adder = findMethod(builder, adderName);
+                if (adder == null) {
+                    insert(builder, setterAnchor, cb.createAdder(field));
+                } else if (retyped) {
+                    editor.replace(adder, cb.createAdder(field));
+                }
+            }
+        }
+
+        if (cb.getOptions().isReusable()) {
+            MethodTree reset = findMethod(builder, BuilderNames.RESET_METHOD_NAME);
+            if (reset == null) {
+                insert(builder, setterAnchor, cb.createResetMethod());
+            } else if (changed) {
+                editor.replace(reset, cb.createResetMethod());
+            }
+        }
+        if (cb.hasStreaming()) {
+            MethodTree readFrom = findMethod(builder, BuilderNames.READ_FROM_METHOD_NAME);
+            if (readFrom == null) {
+                insert(builder, setterAnchor, cb.createReadFromMethod());
+            } else if (changed) {
+                editor.replace(readFrom, cb.createReadFromMethod());
+            }
+        }
+        if (findMethod(builder, BuilderNames.BUILD_METHOD_NAME) == null) {
+            editor.addMember(builder, cb.createBuildMethod());
+        }
+        fieldsChanged = changed;
+    }
+
+    private void updateConstructorBody(BlockTree body, Map<String, VariableTree> current) {
+        Map<String, StatementTree> lines = new HashMap<String, StatementTree>();
+        for (StatementTree statement : body.getStatements()) {
+            String assigned = assignedField(statement);
+            if (assigned != null) {
+                lines.put(assigned, statement);
+            }
+        }
+
+        for (Map.Entry<String, StatementTree> entry : lines.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                editor.removeStatement(body, entry.getValue());
+            }
+        }
+        for (VariableTree field : current.values()) {
+            StatementTree line = lines.get(field.getName().toString());
+            if (line == null) {
+                editor.addStatement(body, cb.createConstructorLine(field));
+            } else if (retypedFields.contains(field.getName().toString())) {
+                editor.replace(line, cb.createConstructorLine(field));
+            }
+        }
+    }
+
+    /**
+     * @return name of the field assigned by <code>this.field = ...;</code>
+     * or <code>field = ...;</code> statement, <code>null</code> for any other
+     * statement
+     */
+    private static String assignedField(StatementTree statement) {
+        if (statement.getKind() != Tree.Kind.EXPRESSION_STATEMENT) {
+            return null;
+        }
+        ExpressionTree expression = ((ExpressionStatementTree) statement).getExpression();
+        if (expression.getKind() != Tree.Kind.ASSIGNMENT) {
+            return null;
+        }
+        ExpressionTree variable = ((AssignmentTree) expression).getVariable();
+        if (variable.getKind() == Tree.Kind.IDENTIFIER) {
+            return ((IdentifierTree) variable).getName().toString();
+        }
+        if (variable.getKind() == Tree.Kind.MEMBER_SELECT) {
+            MemberSelectTree select = (MemberSelectTree) variable;
+            if (select.getExpression().getKind() == Tree.Kind.IDENTIFIER
+                    && "this".contentEquals(((IdentifierTree) select.getExpression()).getName())) {
+                return select.getIdentifier().toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return name of the identifier assigned by the statement, which
+     * {@link #assignedField} has to accept first
+     */
+    private static String assignedValue(StatementTree statement) {
+        ExpressionTree value = ((AssignmentTree) ((ExpressionStatementTree) statement).getExpression()).getExpression();
+        return value.getKind() == Tree.Kind.IDENTIFIER ? ((IdentifierTree) value).getName().toString() : null;
+    }
+
+    private MethodTree findBuilderConstructor(ClassTree clazz) {
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.METHOD) {
+                MethodTree method = (MethodTree) member;
+                if (BuilderNames.CONSTRUCTOR_NAME.contentEquals(method.getName())
+                        && method.getParameters().size() == 1
+                        && isBuilderType(method.getParameters().get(0).getType())) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isBuilderType(Tree type) {
+        String name = type.toString();
+        return name.equals(BuilderNames.BUILDER_CLASS_NAME) || name.startsWith(BuilderNames.BUILDER_CLASS_NAME + "<");
+    }
+
+    /**
+     * @return first method of <code>clazz</code> with the given name, or
+     * <code>null</code>
+     */
+    public static MethodTree findMethod(ClassTree clazz, String name) {
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.METHOD && name.contentEquals(((MethodTree) member).getName())) {
+                return (MethodTree) member;
+            }
+        }
+        return null;
+    }
+
+    private VariableTree findField(ClassTree clazz, String name) {
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.VARIABLE && name.contentEquals(((VariableTree) member).getName())) {
+                return (VariableTree) member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return member following the last field of the builder, its first
+     * member if it has no fields, <code>null</code> to add at the end
+     */
+    private Tree fieldAnchor(ClassTree builder) {
+        List<? extends Tree> members = builder.getMembers();
+        int index = 0;
+        for (int i = members.size() - 1; i >= 0; i--) {
+            if (members.get(i).getKind() == Tree.Kind.VARIABLE) {
+                index = i + 1;
+                break;
+            }
+        }
+        return firstMember(members.subList(index, members.size()));
+    }
+
+    /**
+     * @return <code>reset()</code> or <code>build()</code>, whichever comes
+     * first, <code>null</code> to add at the end
+     */
+    private Tree setterAnchor(ClassTree builder) {
+        for (Tree member : builder.getMembers()) {
+            if (member.getKind() == Tree.Kind.METHOD && !removed.contains(member)) {
+                CharSequence name = ((MethodTree) member).getName();
+                if (BuilderNames.RESET_METHOD_NAME.contentEquals(name) || BuilderNames.BUILD_METHOD_NAME.contentEquals(name)) {
+                    return member;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Tree firstMember(ClassTree clazz) {
+        return firstMember(clazz.getMembers());
+    }
+
+    /**
+     * Members being removed can not take anything in front of them.
+     */
+    private Tree firstMember(List<? extends Tree> members) {
+        for (Tree member : members) {
+            if (!removed.contains(member)) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private void insert(ClassTree clazz, Tree before, T member) {
+        if (before == null) {
+            editor.addMember(clazz, member);
+        } else {
+            editor.insertMember(clazz, before, member);
+        }
+    }
+
+    private void remove(ClassTree clazz, Tree member) {
+        if (member != null && removed.add(member)) {
+            editor.removeMember(clazz, member);
+        }
+    }
+
+    /**
+     * The adder of a field whose singular is the field name itself, e.g.
+     * <code>data</code>, takes a parameter of the same name as its setter.
+     */
+    private boolean isAdder(MethodTree method, String fieldName) {
+        for (CollectionKind kind : CollectionKind.values()) {
+            if (kind.adderName(fieldName).contentEquals(method.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return adder of the field for its current collection kind,
+     * <code>null</code> if it is not a collection
+     */
+    private String adderName(VariableTree field) {
+        CollectionKind kind = cb.getCollectionKind(field);
+        return kind == null ? null : kind.adderName(field.getName().toString());
+    }
+
+    /**
+     * The kind can change with the same type, e.g. once collections are
+     * turned on or off: the builder then lacks the adder of the current kind
+     * or still has the one of another.
+     */
+    private boolean sameCollectionKind(ClassTree builder, VariableTree field) {
+        String adderName = adderName(field);
+        if (adderName != null && findMethod(builder, adderName) == null) {
+            return false;
+        }
+        for (CollectionKind kind : CollectionKind.values()) {
+            String name = kind.adderName(field.getName().toString());
+            if (!name.equals(adderName) && findMethod(builder, name) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameType(VariableTree first, VariableTree second) {
+        return first.getType().toString().equals(second.getType().toString());
+    }
+}
@@ -0,0 +1,602 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeParameterTree;
+import com.sun.source.tree.VariableTree;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+
+/**
+ *
+ * @param <T> element of the generated code, see {@link CodeMaker}
+ * @author Arkadiusz Gabiga
+ */
+public class ClassBuilder<T> {
+
+    public static final String BUILDER_CLASS_NAME = BuilderNames.BUILDER_CLASS_NAME;
+    private CodeMaker<T> make;
+    private String className;
+    private String methodPrefix;
+    private List<VariableTree> fields;
+    private List<T> allMembers;
+    private MethodBuilder<T> mb;
+    private List<? extends TypeParameterTree> parameters;
+    private Util util;
+    private BuilderOptions options;
+    private List<VariableTree> requiredFields;
+    private boolean directConstruction;
+    private boolean abstractLevel;
+    private Tree superclass;
+    private String targetParameter;
+    private String selfParameter;
+    private String builderName = BUILDER_CLASS_NAME;
+    private boolean separateFile;
+
+    public ClassBuilder(CodeMaker<T> make, String className, String methodPrefix, List<VariableTree> fields, List<? extends TypeParameterTree> parameters) {
+        this(make, className, prefixOnly(methodPrefix), fields, parameters);
+    }
+
+    public ClassBuilder(CodeMaker<T> make, String className, BuilderOptions options, List<VariableTree> fields, List<? extends TypeParameterTree> parameters) {
+        this.make = make;
+        this.className = className;
+        this.methodPrefix = options.getMethodPrefix();
+        this.options = options;
+        this.fields = fields;
+        this.allMembers = new ArrayList<T>();
+        this.mb = new MethodBuilder<T>(methodPrefix, make, fields);
+
+        if (parameters == null) {
+            parameters = Collections.<TypeParameterTree>emptyList();
+        }
+
+        this.parameters = parameters;
+        this.util = new Util();
+        this.requiredFields = new ArrayList<VariableTree>();
+        if (options.isStaged()) {
+            for (VariableTree field : fields) {
+                if (util.canProcess(field) && util.isRequired(field)) {
+                    requiredFields.add(field);
+                }
+            }
+        }
+        if (isStaged()) {
+            mb.setSetterTypes(stepTypes());
+            mb.setBuilderMethodType(stepType(requiredFields.get(0)));
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the builder is staged, i.e. the option is
+     * set and the class has at least one required field
+     */
+    public boolean isStaged() {
+        return !requiredFields.isEmpty();
+    }
+
+    /**
+     * @return names of the stage interfaces, in the order the stages are
+     * passed, the last one being <code>BuildStep</code>
+     */
+    public List<String> getStepNames() {
+        List<String> names = new ArrayList<String>();
+        for (VariableTree field : requiredFields) {
+            names.add(BuilderNames.stepName(field.getName().toString()));
+        }
+        names.add(BuilderNames.BUILD_STEP_NAME);
+        return names;
+    }
+
+    /**
+     * @return one interface per required field, declaring its setter which
+     * returns the next stage, and <code>BuildStep</code> declaring the
+     * optional setters and <code>build()</code>
+     */
+    public List<T> createStepInterfaces() {
+        List<T> interfaces = new ArrayList<T>();
+        for (VariableTree field : requiredFields) {
+            interfaces.add(make.Interface(mb.modifiers(Modifier.PUBLIC),
+                    BuilderNames.stepName(field.getName().toString()),
+                    mb.typeParameters(parameters),
+                    createDeclarations(field)));
+        }
+        List<T> members = new ArrayList<T>();
+        for (VariableTree field : fields) {
+            if (util.canProcess(field) && !requiredFields.contains(field)) {
+                members.addAll(createDeclarations(field));
+            }
+        }
+        members.add(mb.createBuildDeclaration(className));
+        interfaces.add(make.Interface(mb.modifiers(Modifier.PUBLIC),
+                BuilderNames.BUILD_STEP_NAME,
+                mb.typeParameters(parameters),
+                members));
+        return interfaces;
+    }
+
+    /**
+     * @param collections kinds of the collection fields by field name, see
+     * {@link CollectionKind#of}
+     */
+    public void setCollections(Map<String, CollectionKind> collections) {
+        mb.setCollections(collections);
+    }
+
+    /**
+     * @param directConstruction <code>true</code> for records and classes
+     * with final fields, see {@link Util#isDirectConstruction}
+     */
+    public void setDirectConstruction(boolean directConstruction) {
+        this.directConstruction = directConstruction;
+    }
+
+    public boolean isDirectConstruction() {
+        return directConstruction;
+    }
+
+    /**
+     * Makes the builder part of a class hierarchy, see
+     * {@link BuilderOptions#isHierarchy}. Staged and direct construction do
+     * not apply then, neither do the members which would have to know the
+     * fields of the superclasses: <code>toBuilder()</code>, copy methods
+     * and <code>reset()</code>.
+     *
+     * @param abstractLevel <code>true</code> for an abstract class, whose
+     * builder is abstract and self-typed
+     * @param superclass <code>extends</code> clause of a class whose
+     * superclass has such a builder, otherwise <code>null</code>
+     */
+    public void setHierarchy(boolean abstractLevel, Tree superclass) {
+        this.abstractLevel = abstractLevel;
+        this.superclass = superclass;
+        if (!isHierarchy()) {
+            return;
+        }
+        this.targetParameter = BuilderNames.typeParameterName(BuilderNames.TARGET_TYPE_PARAMETER, parameters);
+        this.selfParameter = BuilderNames.typeParameterName(BuilderNames.SELF_TYPE_PARAMETER, parameters);
+        this.directConstruction = false;
+        this.requiredFields.clear();
+        mb.setBuilderMethodType(null);
+        mb.setSetterTypes(Collections.<String, String>emptyMap());
+        if (abstractLevel) {
+            Map<String, String> types = new HashMap<String, String>();
+            for (VariableTree field : fields) {
+                types.put(field.getName().toString(), selfParameter);
+            }
+            mb.setSetterTypes(types);
+            mb.setReturnSelf(true);
+        }
+    }
+
+    /**
+     * Generates the builder as a top level class of its own,
+     * <code>XBuilder</code>, see {@link BuilderOptions#isSeparateFile}. Its
+     * fields are package-private, so the constructor of the target class
+     * can read them, and it declares <code>builder()</code> itself.
+     */
+    public void setSeparateFile(boolean separateFile) {
+        this.separateFile = separateFile;
+        this.builderName = separateFile ? BuilderNames.builderFileName(className) : BUILDER_CLASS_NAME;
+        mb.setBuilderName(builderName);
+    }
+
+    public boolean isSeparateFile() {
+        return separateFile;
+    }
+
+    public String getBuilderName() {
+        return builderName;
+    }
+
+    public boolean isHierarchy() {
+        return abstractLevel || superclass != null;
+    }
+
+    /**
+     * @return <code>false</code> for abstract classes of a hierarchy, which
+     * can not be built
+     */
+    public boolean hasBuilderMethod() {
+        return !abstractLevel;
+    }
+
+    public boolean hasToBuilder() {
+        return options.isToBuilder() && !isHierarchy();
+    }
+
+    public boolean hasCopyMethods() {
+        return options.isCopyMethods() && !isHierarchy();
+    }
+
+    public boolean hasThreadLocal() {
+        return options.isThreadLocal() && !isHierarchy();
+    }
+
+    public boolean hasStreaming() {
+        return options.isStreaming() && !isHierarchy() && !isStaged();
+    }
+
+    /**
+     * @return qualified names of the types the generated code refers to and
+     * which the source may not import yet
+     */
+    public Set<String> getImports() {
+        Set<String> imports = new LinkedHashSet<String>();
+        for (VariableTree field : fields) {
+            CollectionKind kind = mb.getCollectionKind(field);
+            if (kind != null) {
+                imports.add(CollectionKind.PACKAGE + "." + CollectionKind.COLLECTIONS);
+                imports.add(kind.getQualifiedImplementation());
+            }
+        }
+        if (hasStreaming()) {
+            Collections.addAll(imports, JsonKind.readImports());
+            Collections.addAll(imports, JsonKind.writeImports());
+        }
+        return imports;
+    }
+
+    /**
+     * @return qualified names of the types the members left in the target
+     * class refer to when the builder has a file of its own: the copies of
+     * the collections in the constructor and <code>writeTo</code>
+     */
+    public Set<String> getClassImports() {
+        Set<String> imports = new LinkedHashSet<String>();
+        for (VariableTree field : fields) {
+            CollectionKind kind = mb.getCollectionKind(field);
+            if (kind != null && !directConstruction) {
+                imports.add(CollectionKind.PACKAGE + "." + CollectionKind.COLLECTIONS);
+                imports.add(kind.getQualifiedImplementation());
+            }
+        }
+        if (hasStreaming()) {
+            Collections.addAll(imports, JsonKind.writeImports());
+        }
+        return imports;
+    }
+
+    public T createBuilderMethod() {
+        if (hasThreadLocal()) {
+            return mb.createThreadLocalBuilderMethod(this.parameters);
+        }
+        return mb.createBuilderMethod(this.parameters);
+    }
+
+    /**
+     * @return <code>private static final ThreadLocal&lt;Builder&gt;</code>
+     * field backing the thread local <code>builder()</code>
+     */
+    public T createThreadLocalField() {
+        String type = "ThreadLocal<" + builderName + ">";
+        return make.Variable(mb.modifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL),
+                BuilderNames.THREAD_BUILDER_FIELD_NAME,
+                mb.type(type),
+                make.NewClass(mb.type(type), Collections.<T>emptyList()));
+    }
+
+    public T createReadFromMethod() {
+        return mb.createReadFromMethod(builderName + mb.buildParams(parameters));
+    }
+
+    /**
+     * @return <code>writeTo(JsonGenerator)</code> for the target class
+     */
+    public T createWriteToMethod() {
+        return mb.createWriteToMethod();
+    }
+
+    public T createToBuilderMethod() {
+        return mb.createToBuilderMethod(parameters);
+    }
+
+    public T createCopyMethod(VariableTree field) {
+        if (directConstruction) {
+            return mb.createDirectCopyMethod(field, className, parameters);
+        }
+        return mb.createCopyMethod(field, className, parameters);
+    }
+
+    /**
+     * @return one <code>withX(x)</code> copy method per builder field
+     */
+    public List<T> createCopyMethods() {
+        List<T> methods = new ArrayList<T>();
+        for (VariableTree field : fields) {
+            if (util.canProcess(field)) {
+                methods.add(createCopyMethod(field));
+            }
+        }
+        return methods;
+    }
+
+    public T createResetMethod() {
+        return mb.createResetMethod();
+    }
+
+    public BuilderOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return constructor taking the builder, private unless subclasses
+     * have to call it, it takes the builder of any subclass then
+     */
+    public T createConstructor() {
+        String type = builderName + mb.buildParams(parameters);
+        if (abstractLevel) {
+            type = BUILDER_CLASS_NAME + BuilderNames.typeArguments(parameters, "?", "?");
+        }
+        T parameter = make.Variable(mb.modifiers(),
+                BUILDER_CLASS_NAME.toLowerCase(),
+                mb.type(type),
+                null);
+        return make.Constructor(
+                separateFile ? mb.modifiers() : mb.modifiers(abstractLevel ? Modifier.PROTECTED : Modifier.PRIVATE),
+                className,
+                Collections.singletonList(parameter),
+                buildConstructorBody());
+    }
+
+    /**
+     * @return private constructor assigning every builder field from the
+     * parameter of the same name, for classes with final fields which have
+     * none. Package-private for a builder in a file of its own.
+     */
+    public T createAllArgsConstructor() {
+        List<T> constructorParameters = new ArrayList<T>();
+        List<T> statements = new ArrayList<T>();
+        for (VariableTree field : fields) {
+            if (util.canProcess(field)) {
+                constructorParameters.add(make.Variable(mb.modifiers(), field.getName(), make.Parsed(field.getType()), null));
+                statements.add(make.ExpressionStatement(make.Assignment(
+                        make.MemberSelect(make.Identifier("this"), field.getName()),
+                        make.Identifier(field.getName()))));
+            }
+        }
+        return make.Constructor(
+                separateFile ? mb.modifiers() : mb.modifiers(Modifier.PRIVATE),
+                className,
+                constructorParameters,
+                make.Block(statements));
+    }
+
+    /**
+     * @return private constructor of a staged builder, only
+     * <code>builder()</code> can create it, returning the first stage
+     */
+    private T createStagedConstructor() {
+        return make.Constructor(
+                mb.modifiers(Modifier.PRIVATE),
+                builderName,
+                Collections.<T>emptyList(),
+                make.Block(Collections.<T>emptyList()));
+    }
+
+    public T createEmptyConstructor() {
+        return make.Constructor(
+                mb.modifiers(Modifier.PUBLIC),
+                className,
+                Collections.<T>emptyList(),
+                make.Block(Collections.<T>emptyList()));
+    }
+
+    public T createSetter(VariableTree field) {
+        return mb.createSetterMethod(field);
+    }
+
+    public T createBuildMethod() {
+        if (directConstruction) {
+            return mb.createDirectBuildMethod(className + mb.buildParams(parameters));
+        }
+        return mb.createBuildMethod(className);
+    }
+
+    /**
+     * @return <code>this.field = builder.field;</code> statement of the
+     * constructor taking the builder
+     */
+    public T createConstructorLine(VariableTree field) {
+        String name = field.getName().toString();
+        T source = mb.isCollection(field)
+                ? mb.createUnmodifiableCopy(field, BUILDER_CLASS_NAME.toLowerCase())
+                : make.MemberSelect(make.Identifier(BUILDER_CLASS_NAME.toLowerCase()), name);
+        return make.ExpressionStatement(make.Assignment(
+                make.MemberSelect(make.Identifier("this"), name),
+                source));
+    }
+
+    /**
+     * @return builder field, collections start as <code>null</code> and are
+     * allocated by the first adder. Fields of records and of classes with
+     * final fields lose their modifiers, the builder has to assign them,
+     * but keep their initializer. Annotations are not copied, e.g. a
+     * <code>@NonNull</code> field is <code>null</code> until it is set.
+     */
+    public T createBuilderField(VariableTree field) {
+        boolean plain = mb.getCollectionKind(field) == null && !directConstruction
+                && !field.getModifiers().getFlags().contains(Modifier.FINAL);
+        T initializer = mb.getCollectionKind(field) == null && field.getInitializer() != null
+                ? make.Parsed(field.getInitializer()) : null;
+        if (separateFile) {
+            return make.Variable(mb.modifiers(),
+                    field.getName(),
+                    make.Parsed(field.getType()),
+                    initializer);
+        }
+        if (plain) {
+            return make.Variable(make.Modifiers(field.getModifiers().getFlags(), Collections.<T>emptyList()),
+                    field.getName(),
+                    make.Parsed(field.getType()),
+                    initializer);
+        }
+        return make.Variable(mb.modifiers(Modifier.PRIVATE),
+                field.getName(),
+                make.Parsed(field.getType()),
+                initializer);
+    }
+
+    public T createAdder(VariableTree field) {
+        return mb.createAdderMethod(field);
+    }
+
+    public boolean isCollection(VariableTree field) {
+        return mb.isCollection(field);
+    }
+
+    public CollectionKind getCollectionKind(VariableTree field) {
+        return mb.getCollectionKind(field);
+    }
+
+    public T buildClass() {
+        T classModifiers = abstractLevel
+                ? mb.modifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.ABSTRACT)
+                : separateFile ? mb.modifiers(Modifier.PUBLIC) : mb.modifiers(Modifier.PUBLIC, Modifier.STATIC);
+        List<T> setterMethods = mb.setterMethods();
+
+        for (VariableTree field : fields) {
+            allMembers.add(createBuilderField(field));
+        }
+        if (isStaged()) {
+            allMembers.add(createStagedConstructor());
+        }
+        allMembers.addAll(setterMethods);
+        if (options.isReusable() && !isHierarchy()) {
+            allMembers.add(mb.createResetMethod());
+        }
+        if (hasStreaming()) {
+            allMembers.add(createReadFromMethod());
+        }
+        if (!isHierarchy()) {
+            allMembers.add(createBuildMethod());
+        } else if (abstractLevel) {
+            if (superclass == null) {
+                allMembers.add(mb.createSelfMethod(selfParameter, true));
+                allMembers.add(mb.createAbstractBuildMethod(targetParameter));
+            }
+        } else {
+            allMembers.add(mb.createSelfMethod(BUILDER_CLASS_NAME + mb.buildParams(parameters), false));
+            allMembers.add(createBuildMethod());
+        }
+
+        List<T> implemented = new ArrayList<T>();
+        if (isStaged()) {
+            String typeArguments = mb.buildParams(parameters);
+            for (String step : getStepNames()) {
+                implemented.add(mb.type(step + typeArguments));
+            }
+        }
+
+        List<T> builderParameters = mb.typeParameters(parameters);
+        T extended = null;
+        if (abstractLevel) {
+            builderParameters.add(make.TypeParameter(targetParameter,
+                    Collections.singletonList(mb.type(className + mb.buildParams(parameters)))));
+            builderParameters.add(make.TypeParameter(selfParameter,
+                    Collections.singletonList(mb.type(BUILDER_CLASS_NAME
+                            + BuilderNames.typeArguments(parameters, targetParameter, selfParameter)))));
+            if (superclass != null) {
+                extended = mb.type(BuilderNames.superBuilderType(superclass, targetParameter, selfParameter));
+            }
+        } else if (superclass != null) {
+            extended = mb.type(BuilderNames.superBuilderType(superclass,
+                    className + mb.buildParams(parameters), BUILDER_CLASS_NAME + mb.buildParams(parameters)));
+        }
+
+        return make.Class(classModifiers, builderName, builderParameters, extended, implemented, allMembers);
+    }
+
+    /**
+     * @return top level builder class, with the thread local field and
+     * <code>builder()</code> which would otherwise go to the target class
+     */
+    public T buildFileClass() {
+        if (hasThreadLocal()) {
+            allMembers.add(createThreadLocalField());
+        }
+        allMembers.add(createBuilderMethod());
+        return buildClass();
+    }
+
+    private static BuilderOptions prefixOnly(String methodPrefix) {
+        BuilderOptions options = new BuilderOptions();
+        options.setMethodPrefix(methodPrefix);
+        return options;
+    }
+
+    private List<T> createDeclarations(VariableTree field) {
+        List<T> declarations = new ArrayList<T>();
+        declarations.add(mb.createSetterDeclaration(field));
+        if (mb.isCollection(field)) {
+            declarations.add(mb.createAdderDeclaration(field));
+        }
+        return declarations;
+    }
+
+    /**
+     * Setters and adders of a required field return the stage of the next
+     * required field, all the others return <code>BuildStep</code>.
+     */
+    private Map<String, String> stepTypes() {
+        String buildStep = BuilderNames.BUILD_STEP_NAME + mb.buildParams(parameters);
+        Map<String, String> types = new HashMap<String, String>();
+        for (VariableTree field : fields) {
+            types.put(field.getName().toString(), buildStep);
+        }
+        for (int i = 0; i < requiredFields.size() - 1; i++) {
+            types.put(requiredFields.get(i).getName().toString(), stepType(requiredFields.get(i + 1)));
+        }
+        return types;
+    }
+
+    private String stepType(VariableTree field) {
+        return BuilderNames.stepName(field.getName().toString()) + mb.buildParams(parameters);
+    }
+
+    private T buildConstructorBody() {
+        List<T> statements = new ArrayList<T>();
+        if (superclass != null) {
+            statements.add(make.ExpressionStatement(make.MethodInvocation(Collections.<T>emptyList(),
+                    make.Identifier("super"),
+                    Collections.singletonList(make.Identifier(BUILDER_CLASS_NAME.toLowerCase())))));
+        }
+        for (VariableTree vt : fields) {
+            if (util.canProcess(vt)) {
+                statements.add(createConstructorLine(vt));
+            }
+        }
+        return make.Block(statements);
+    }
+}
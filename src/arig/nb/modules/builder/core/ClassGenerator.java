@@ -0,0 +1,249 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generates or updates the builder of one class. Both the IDE and the
+ * headless generator come here with the fields they collected, the former
+ * with trees of a working copy, the latter with source text.
+ *
+ * @param <T> element of the generated code, see {@link CodeMaker}
+ * @author Arkadiusz Gabiga
+ */
+public class ClassGenerator<T> {
+
+    /**
+     * Why {@link #generate} left a class without a builder.
+     */
+    public static final String REORDERED_CONSTRUCTOR =
+            "a constructor takes the final fields in another order, the builder could swap them";
+
+    private final CodeMaker<T> make;
+    private final CodeEditor<T> editor;
+    private final BuilderOptions options;
+    private final Util util = new Util();
+
+    public ClassGenerator(CodeMaker<T> make, CodeEditor<T> editor, BuilderOptions options) {
+        this.make = make;
+        this.editor = editor;
+        this.options = options;
+    }
+
+    /**
+     * Classes which have a builder already get it updated or replaced, see
+     * {@link BuilderUpdater}.
+     *
+     * @param fields fields to build, see {@link Util#canProcess}
+     * @param collections kinds of the collection fields by field name, see
+     * {@link CollectionKind#of}
+     * @param hasEmptyConstructor <code>true</code> if the class declares a
+     * parameterless constructor itself
+     * @param superclass <code>extends</code> clause of a class whose
+     * superclass has or will have an abstract builder, see
+     * {@link BuilderOptions#isHierarchy}
+     * @param topLevel <code>true</code> for a top level class, only those
+     * can have a builder in a file of its own
+     * @return <code>false</code> if the class was left as it is because
+     * its builder would have to pass the fields to a constructor which
+     * takes them in another order, see {@link #isGenerated}
+     */
+    public boolean generate(ClassTree clazz, List<VariableTree> fields, Map<String, CollectionKind> collections,
+            boolean hasEmptyConstructor, Tree superclass, boolean topLevel) {
+        ClassBuilder<T> cb = new ClassBuilder<T>(make, clazz.getSimpleName().toString(), options, fields, clazz.getTypeParameters());
+        cb.setCollections(collections);
+        cb.setDirectConstruction(util.isDirectConstruction(clazz, fields));
+        if (options.isHierarchy()) {
+            cb.setHierarchy(clazz.getModifiers().getFlags().contains(Modifier.ABSTRACT), superclass);
+        }
+        MethodTree reordered = cb.isDirectConstruction() && !util.isRecord(clazz)
+                ? util.findReorderedConstructor(clazz, fields) : null;
+        if (reordered != null && !isGenerated(reordered, fields)) {
+            return false;
+        }
+        if (options.isSeparateFile() && topLevel && !cb.isHierarchy() && !cb.isStaged() && editor.canCreateFiles()) {
+            cb.setSeparateFile(true);
+            generateFile(cb, clazz, fields, hasEmptyConstructor, reordered);
+            return true;
+        }
+
+        ClassTree existingBuilder = BuilderUpdater.findBuilder(clazz);
+        if (existingBuilder != null) {
+            BuilderUpdater<T> updater = new BuilderUpdater<T>(editor, cb);
+            if (updater.canUpdate(existingBuilder)) {
+                updater.update(clazz, existingBuilder, fields);
+            } else {
+                updater.replace(clazz, existingBuilder, fields, hasEmptyConstructor, superclass);
+            }
+        } else {
+            generateNew(cb, clazz, fields, hasEmptyConstructor, superclass, reordered);
+        }
+        for (String qualifiedName : cb.getImports()) {
+            editor.addImport(qualifiedName);
+        }
+        return true;
+    }
+
+    /**
+     * The builder of a class with final fields passes them in declaration
+     * order. A constructor taking the same types in another order would get
+     * fields of the same type swapped, and an all-args constructor can not
+     * be added next to it. It is replaced if it looks generated for an
+     * earlier order of the fields: not public and nothing but assignments
+     * of its parameters to the fields of the same names. A hand written one
+     * is left alone, and so is the class.
+     *
+     * @param reordered constructor found by
+     * {@link Util#findReorderedConstructor}
+     */
+    private boolean isGenerated(MethodTree reordered, List<VariableTree> fields) {
+        if (reordered.getModifiers().getFlags().contains(Modifier.PUBLIC)
+                || reordered.getModifiers().getFlags().contains(Modifier.PROTECTED)) {
+            return false;
+        }
+        Set<String> names = new HashSet<String>();
+        for (VariableTree field : fields) {
+            names.add(field.getName().toString());
+        }
+        return BuilderUpdater.isAssigningConstructor(reordered, names);
+    }
+
+    private void addAllArgsConstructor(ClassBuilder<T> cb, ClassTree clazz, List<VariableTree> fields, MethodTree reordered) {
+        if (reordered != null) {
+            editor.replace(reordered, cb.createAllArgsConstructor());
+        } else if (!util.isRecord(clazz) && util.findAllArgsConstructor(clazz, fields) == null) {
+            editor.addMember(clazz, cb.createAllArgsConstructor());
+        }
+    }
+
+    private void generateNew(ClassBuilder<T> cb, ClassTree clazz, List<VariableTree> fields,
+            boolean hasEmptyConstructor, Tree superclass, MethodTree reordered) {
+        if (cb.hasThreadLocal()) {
+            editor.addMember(clazz, cb.createThreadLocalField());
+        }
+        if (cb.isDirectConstruction()) {
+            addAllArgsConstructor(cb, clazz, fields, reordered);
+        } else {
+            // a subclass can not tell whether its superclass has a
+            // parameterless constructor to call
+            if (!hasEmptyConstructor && !util.isDirectConstruction(clazz, fields) && superclass == null) {
+                editor.addMember(clazz, cb.createEmptyConstructor());
+            }
+            editor.addMember(clazz, cb.createConstructor());
+        }
+        if (cb.hasBuilderMethod()) {
+            editor.addMember(clazz, cb.createBuilderMethod());
+        }
+        if (cb.hasToBuilder()) {
+            editor.addMember(clazz, cb.createToBuilderMethod());
+        }
+        if (cb.hasCopyMethods()) {
+            for (T copyMethod : cb.createCopyMethods()) {
+                editor.addMember(clazz, copyMethod);
+            }
+        }
+        if (cb.hasStreaming()) {
+            editor.addMember(clazz, cb.createWriteToMethod());
+        }
+        if (cb.isStaged()) {
+            for (T step : cb.createStepInterfaces()) {
+                editor.addMember(clazz, step);
+            }
+        }
+        editor.addMember(clazz, cb.buildClass());
+    }
+
+    /**
+     * Writes the builder to <code>XBuilder.java</code> and gives the class
+     * only the package-private constructor taking it. The builder file is
+     * generated as a whole every time, replacing the previous one, while
+     * the constructor and <code>writeTo</code> of the class are replaced in
+     * place. The constructor taking the builder and an empty one go once a
+     * field is final.
+     */
+    private void generateFile(ClassBuilder<T> cb, ClassTree clazz, List<VariableTree> fields, boolean hasEmptyConstructor,
+            MethodTree reordered) {
+        if (cb.isDirectConstruction()) {
+            MethodTree constructor = findConstructor(clazz, cb.getBuilderName());
+            if (constructor != null) {
+                editor.removeMember(clazz, constructor);
+            }
+            MethodTree emptyConstructor = util.isRecord(clazz) ? null : BuilderUpdater.findEmptyConstructor(clazz);
+            if (emptyConstructor != null) {
+                editor.removeMember(clazz, emptyConstructor);
+            }
+            addAllArgsConstructor(cb, clazz, fields, reordered);
+        } else {
+            if (!hasEmptyConstructor) {
+                editor.addMember(clazz, cb.createEmptyConstructor());
+            }
+            MethodTree constructor = findConstructor(clazz, cb.getBuilderName());
+            if (constructor == null) {
+                editor.addMember(clazz, cb.createConstructor());
+            } else {
+                editor.replace(constructor, cb.createConstructor());
+            }
+        }
+        if (cb.hasStreaming()) {
+            MethodTree writeTo = BuilderUpdater.findMethod(clazz, BuilderNames.WRITE_TO_METHOD_NAME);
+            if (writeTo == null) {
+                editor.addMember(clazz, cb.createWriteToMethod());
+            } else {
+                editor.replace(writeTo, cb.createWriteToMethod());
+            }
+        }
+        for (String qualifiedName : cb.getClassImports()) {
+            editor.addImport(qualifiedName);
+        }
+        editor.createFile(cb.getBuilderName(), cb.getImports(), cb.buildFileClass());
+    }
+
+    private MethodTree findConstructor(ClassTree clazz, String parameterType) {
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.METHOD) {
+                MethodTree method = (MethodTree) member;
+                if (BuilderNames.CONSTRUCTOR_NAME.contentEquals(method.getName()) && method.getParameters().size() == 1) {
+                    String type = method.getParameters().get(0).getType().toString();
+                    if (type.equals(parameterType) || type.startsWith(parameterType + "<")) {
+                        return method;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import java.util.Collection;
+
+/**
+ * Changes a parsed compilation unit with the code of a {@link CodeMaker}.
+ * The trees passed in are those of the parsed unit, as they were before any
+ * change, so one editor can take many changes of the same class.
+ *
+ * @param <T> element of the code, see {@link CodeMaker}
+ * @author Arkadiusz Gabiga
+ */
+public interface CodeEditor<T> {
+
+    /**
+     * Adds the member after the last one of the class.
+     */
+    void addMember(ClassTree clazz, T member);
+
+    /**
+     * Adds the member in front of <code>before</code>, a member of the
+     * class.
+     */
+    void insertMember(ClassTree clazz, Tree before, T member);
+
+    void removeMember(ClassTree clazz, Tree member);
+
+    /**
+     * Replaces a member or a statement.
+     */
+    void replace(Tree original, T replacement);
+
+    /**
+     * Adds the statement after the last one of the block.
+     */
+    void addStatement(BlockTree block, T statement);
+
+    void removeStatement(BlockTree block, StatementTree statement);
+
+    /**
+     * Imports the type unless the compilation unit can refer to it by its
+     * simple name already.
+     */
+    void addImport(String qualifiedName);
+
+    /**
+     * @return <code>true</code> if {@link #createFile} is supported
+     */
+    boolean canCreateFiles();
+
+    /**
+     * Creates or replaces the file of a top level class in the package of
+     * the compilation unit, with its imports plus the given ones.
+     */
+    void createFile(String className, Collection<String> imports, T clazz);
+}
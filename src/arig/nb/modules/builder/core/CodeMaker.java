@@ -0,0 +1,128 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import com.sun.source.tree.Tree;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Makes the code of the builders. The methods follow
+ * <code>org.netbeans.api.java.source.TreeMaker</code>, so that
+ * {@link ClassBuilder} and {@link MethodBuilder} produce trees of a working
+ * copy in the IDE and source text outside of it from the same logic, see
+ * {@link SourceMaker}.
+ * <p>
+ * Every call makes a new element, an element must not be added to two
+ * parents.
+ *
+ * @param <T> element of the code, e.g. a tree
+ * @author Arkadiusz Gabiga
+ */
+public interface CodeMaker<T> {
+
+    T Modifiers(Set<Modifier> flags);
+
+    T Modifiers(Set<Modifier> flags, List<? extends T> annotations);
+
+    T Annotation(T type, List<? extends T> arguments);
+
+    T Type(String type);
+
+    T PrimitiveType(TypeKind kind);
+
+    /**
+     * @return element standing for a tree of the parsed source, e.g. the
+     * type of a field
+     */
+    T Parsed(Tree tree);
+
+    T TypeParameter(CharSequence name, List<? extends T> bounds);
+
+    T Variable(T modifiers, CharSequence name, T type, T initializer);
+
+    T Constructor(T modifiers, CharSequence className, List<? extends T> parameters, T body);
+
+    /**
+     * @param body <code>null</code> for abstract methods and methods of
+     * interfaces
+     */
+    T Method(T modifiers, CharSequence name, T returnType, List<? extends T> typeParameters,
+            List<? extends T> parameters, List<? extends T> thrown, T body);
+
+    T Class(T modifiers, CharSequence name, List<? extends T> typeParameters, T extendsClause,
+            List<? extends T> implementsClauses, List<? extends T> members);
+
+    T Interface(T modifiers, CharSequence name, List<? extends T> typeParameters, List<? extends T> members);
+
+    T Block(List<? extends T> statements);
+
+    T Return(T expression);
+
+    T ExpressionStatement(T expression);
+
+    T If(T condition, T thenStatement, T elseStatement);
+
+    T WhileLoop(T condition, T body);
+
+    T Switch(T expression, List<? extends T> cases);
+
+    /**
+     * @param expression <code>null</code> for <code>default</code>
+     */
+    T Case(T expression, List<? extends T> statements);
+
+    T Break();
+
+    T Continue();
+
+    T Throw(T expression);
+
+    T Assignment(T variable, T expression);
+
+    T Identifier(CharSequence name);
+
+    T MemberSelect(T expression, CharSequence name);
+
+    T MethodInvocation(List<? extends T> typeArguments, T method, List<? extends T> arguments);
+
+    T NewClass(T type, List<? extends T> arguments);
+
+    /**
+     * @return array creation with initializers, e.g.
+     * <code>new int[]{1, 2}</code>
+     */
+    T NewArray(T elementType, List<? extends T> initializers);
+
+    T Literal(Object value);
+
+    T Binary(Tree.Kind kind, T left, T right);
+
+    T ConditionalExpression(T condition, T trueExpression, T falseExpression);
+}
@@ -0,0 +1,194 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import java.util.List;
+
+/**
+ * <code>java.util</code> collections which builders fill element by element.
+ * The builder allocates its own collection lazily, on the first added element,
+ * and the built object gets a single unmodifiable copy of it.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public enum CollectionKind {
+
+    LIST("List", "ArrayList", "add"),
+    SET("Set", "LinkedHashSet", "add"),
+    MAP("Map", "LinkedHashMap", "put");
+
+    public static final String PACKAGE = "java.util";
+    public static final String COLLECTIONS = "Collections";
+    private final String interfaceName;
+    private final String implementation;
+    private final String adderPrefix;
+
+    private CollectionKind(String interfaceName, String implementation, String adderPrefix) {
+        this.interfaceName = interfaceName;
+        this.implementation = implementation;
+        this.adderPrefix = adderPrefix;
+    }
+
+    /**
+     * @return simple name of the collection the builder fills
+     */
+    public String getImplementation() {
+        return implementation;
+    }
+
+    public String getQualifiedImplementation() {
+        return PACKAGE + "." + implementation;
+    }
+
+    /**
+     * @return name of the <code>Collections</code> method wrapping the copy
+     */
+    public String getUnmodifiableMethod() {
+        return "unmodifiable" + interfaceName;
+    }
+
+    /**
+     * @return name of the <code>Collections</code> method returning the
+     * shared empty instance
+     */
+    public String getEmptyMethod() {
+        return "empty" + interfaceName;
+    }
+
+    /**
+     * @return name of the method adding one element, e.g.
+     * <code>addItem</code> for <code>items</code>
+     */
+    public String adderName(String fieldName) {
+        return BuilderNames.methodName(adderPrefix, singular(fieldName));
+    }
+
+    /**
+     * @return parameter names of the adder, element for collections, key and
+     * value for maps
+     */
+    public String[] adderParameters(String fieldName) {
+        return this == MAP ? new String[]{"key", "value"} : new String[]{singular(fieldName)};
+    }
+
+    /**
+     * Recognizes the field type from the source only, the simple name has to
+     * be imported from <code>java.util</code> explicitly or on demand, and
+     * it must not be shadowed by a single type import from elsewhere. Raw
+     * types and types with wildcard arguments are not handled, the builder
+     * could not add elements to them.
+     *
+     * @return kind of the field's collection, <code>null</code> for any other
+     * type
+     */
+    public static CollectionKind of(VariableTree var, List<? extends ImportTree> imports) {
+        Tree type = var.getType();
+        if (type.getKind() != Tree.Kind.PARAMETERIZED_TYPE) {
+            return null;
+        }
+        ParameterizedTypeTree parameterized = (ParameterizedTypeTree) type;
+        for (Tree argument : parameterized.getTypeArguments()) {
+            if (argument.getKind() == Tree.Kind.UNBOUNDED_WILDCARD
+                    || argument.getKind() == Tree.Kind.EXTENDS_WILDCARD
+                    || argument.getKind() == Tree.Kind.SUPER_WILDCARD) {
+                return null;
+            }
+        }
+        String name = parameterized.getType().toString();
+        for (CollectionKind kind : values()) {
+            int arguments = kind == MAP ? 2 : 1;
+            if (parameterized.getTypeArguments().size() != arguments) {
+                continue;
+            }
+            if (name.equals(PACKAGE + "." + kind.interfaceName)
+                    || (name.equals(kind.interfaceName) && isImported(kind.interfaceName, imports))) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return type arguments of a field recognized by
+     * {@link #of(VariableTree, List)}, e.g. <code>String, Integer</code>
+     */
+    public static String typeArguments(VariableTree var) {
+        StringBuilder sb = new StringBuilder();
+        for (Tree argument : ((ParameterizedTypeTree) var.getType()).getTypeArguments()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(argument);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return types of the adder parameters
+     */
+    public static String[] adderTypes(VariableTree var) {
+        List<? extends Tree> arguments = ((ParameterizedTypeTree) var.getType()).getTypeArguments();
+        String[] types = new String[arguments.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = arguments.get(i).toString();
+        }
+        return types;
+    }
+
+    private static boolean isImported(String simpleName, List<? extends ImportTree> imports) {
+        boolean imported = false;
+        for (ImportTree importTree : imports) {
+            if (importTree.isStatic() || importTree.getQualifiedIdentifier().getKind() != Tree.Kind.MEMBER_SELECT) {
+                continue;
+            }
+            MemberSelectTree qualified = (MemberSelectTree) importTree.getQualifiedIdentifier();
+            String pkg = qualified.getExpression().toString();
+            String name = qualified.getIdentifier().toString();
+            if (name.equals(simpleName)) {
+                if (!pkg.equals(PACKAGE)) {
+                    return false;
+                }
+                imported = true;
+            } else if (name.equals("*") && pkg.equals(PACKAGE)) {
+                imported = true;
+            }
+        }
+        return imported;
+    }
+
+    private static String singular(String fieldName) {
+        if (fieldName.length() > 1 && fieldName.endsWith("s") && !fieldName.endsWith("ss")) {
+            return fieldName.substring(0, fieldName.length() - 1);
+        }
+        return fieldName;
+    }
+}
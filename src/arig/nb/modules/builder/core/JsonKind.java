@@ -0,0 +1,151 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import com.sun.source.tree.VariableTree;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field types which <code>readFrom(JsonParser)</code> and
+ * <code>writeTo(JsonGenerator)</code> of the Jackson streaming API handle,
+ * see {@link BuilderOptions#isStreaming}. Fields of any other type are
+ * skipped when read and not written.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public enum JsonKind {
+
+    STRING("String", "String", "getValueAsString", "writeStringField"),
+    BOOLEAN("boolean", "Boolean", "getBooleanValue", "writeBooleanField"),
+    BYTE("byte", "Byte", "getByteValue", "writeNumberField"),
+    SHORT("short", "Short", "getShortValue", "writeNumberField"),
+    INT("int", "Integer", "getIntValue", "writeNumberField"),
+    LONG("long", "Long", "getLongValue", "writeNumberField"),
+    FLOAT("float", "Float", "getFloatValue", "writeNumberField"),
+    DOUBLE("double", "Double", "getDoubleValue", "writeNumberField");
+
+    public static final String PACKAGE = "com.fasterxml.jackson.core";
+    public static final String PARSER = "JsonParser";
+    public static final String GENERATOR = "JsonGenerator";
+    public static final String TOKEN = "JsonToken";
+    public static final String IO_EXCEPTION = "java.io.IOException";
+    public static final String FIELD_VARIABLE_NAME = "field";
+    private final String primitive;
+    private final String boxed;
+    private final String getter;
+    private final String writer;
+
+    private JsonKind(String primitive, String boxed, String getter, String writer) {
+        this.primitive = primitive;
+        this.boxed = boxed;
+        this.getter = getter;
+        this.writer = writer;
+    }
+
+    /**
+     * @return kind of the field type, <code>null</code> if it is not
+     * supported
+     */
+    public static JsonKind of(VariableTree var) {
+        String type = var.getType().toString();
+        for (JsonKind kind : values()) {
+            if (type.equals(kind.primitive) || type.equals(kind.boxed) || type.equals("java.lang." + kind.boxed)) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return <code>true</code> if the field is of the primitive type, its
+     * value is never <code>null</code>
+     */
+    public boolean isPrimitive(VariableTree var) {
+        return var.getType().toString().equals(primitive);
+    }
+
+    /**
+     * @return simple name of the wrapper type, e.g. <code>Integer</code>
+     */
+    public String getBoxed() {
+        return boxed;
+    }
+
+    /**
+     * @return method of <code>JsonParser</code> returning the current value
+     */
+    public String getGetter() {
+        return getter;
+    }
+
+    /**
+     * @return method of <code>JsonGenerator</code> writing a field of the
+     * kind
+     */
+    public String getWriter() {
+        return writer;
+    }
+
+    /**
+     * Groups the supported fields by the hash code of their names, the
+     * cases of the switch in <code>readFrom</code>.
+     *
+     * @return fields of each hash code, in the order of the fields
+     */
+    public static Map<Integer, List<VariableTree>> cases(List<VariableTree> fields) {
+        Map<Integer, List<VariableTree>> cases = new LinkedHashMap<Integer, List<VariableTree>>();
+        for (VariableTree var : fields) {
+            if (of(var) != null) {
+                Integer hash = Integer.valueOf(var.getName().toString().hashCode());
+                List<VariableTree> sameHash = cases.get(hash);
+                if (sameHash == null) {
+                    sameHash = new ArrayList<VariableTree>();
+                    cases.put(hash, sameHash);
+                }
+                sameHash.add(var);
+            }
+        }
+        return cases;
+    }
+
+    /**
+     * @return qualified names of the types <code>readFrom</code> refers to
+     */
+    public static String[] readImports() {
+        return new String[]{PACKAGE + "." + PARSER, PACKAGE + "." + TOKEN, IO_EXCEPTION};
+    }
+
+    /**
+     * @return qualified names of the types <code>writeTo</code> refers to
+     */
+    public static String[] writeImports() {
+        return new String[]{PACKAGE + "." + GENERATOR, IO_EXCEPTION};
+    }
+}
@@ -0,0 +1,825 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.ArrayTypeTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.PrimitiveTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeParameterTree;
+import com.sun.source.tree.VariableTree;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+
+/**
+ *
+ * @param <T> element of the generated code, see {@link CodeMaker}
+ * @author Arkadiusz Gabiga
+ */
+public class MethodBuilder<T> {
+
+    public static final String BUILDER_METHOD_NAME = BuilderNames.BUILDER_METHOD_NAME;
+    public static final String BUILD_METHOD_NAME = BuilderNames.BUILD_METHOD_NAME;
+    public static final String RESET_METHOD_NAME = BuilderNames.RESET_METHOD_NAME;
+    public static final String TO_BUILDER_METHOD_NAME = BuilderNames.TO_BUILDER_METHOD_NAME;
+    private static final String THIS = "this";
+    private static final String BUILDER_VARIABLE_NAME = BuilderNames.BUILDER_PARAMETER_NAME;
+    private String prefix;
+    private CodeMaker<T> make;
+    private List<VariableTree> fields;
+    private Util util;
+    private Map<String, CollectionKind> collections = Collections.emptyMap();
+    private Map<String, String> setterTypes = Collections.emptyMap();
+    private String builderMethodType;
+    private boolean returnSelf;
+    private String builderName = BuilderNames.BUILDER_CLASS_NAME;
+    private List<? extends TypeParameterTree> typeArgumentsOf;
+    private String typeArguments;
+
+    public MethodBuilder(String prefix, CodeMaker<T> make, List<VariableTree> fields) {
+        this.prefix = prefix;
+        this.make = make;
+        this.fields = fields;
+        this.util = new Util();
+    }
+
+    /**
+     * @param collections kinds of the collection fields to generate adders
+     * for, by field name
+     */
+    public void setCollections(Map<String, CollectionKind> collections) {
+        this.collections = collections;
+    }
+
+    /**
+     * Used by staged builders, whose setters return the interface of the
+     * next stage.
+     *
+     * @param setterTypes return types of the setters and adders by field
+     * name, <code>Builder</code> for fields not included
+     */
+    public void setSetterTypes(Map<String, String> setterTypes) {
+        this.setterTypes = setterTypes;
+    }
+
+    /**
+     * @param builderMethodType return type of <code>builder()</code>, the
+     * builder class itself if <code>null</code>
+     */
+    public void setBuilderMethodType(String builderMethodType) {
+        this.builderMethodType = builderMethodType;
+    }
+
+    /**
+     * @param returnSelf <code>true</code> if setters and adders return
+     * <code>self()</code>, as in the abstract builders of a class hierarchy
+     */
+    public void setReturnSelf(boolean returnSelf) {
+        this.returnSelf = returnSelf;
+    }
+
+    /**
+     * @param builderName name of the builder class, <code>Builder</code>
+     * unless it is generated into a file of its own
+     */
+    public void setBuilderName(String builderName) {
+        this.builderName = builderName;
+    }
+
+    public List<T> setterMethods() {
+        List<T> methods = new ArrayList<T>();
+        for (VariableTree var : fields) {
+            if (util.canProcess(var)) {
+                methods.add(prepareMethod(var));
+                if (collections.containsKey(var.getName().toString())) {
+                    methods.add(createAdderMethod(var));
+                }
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * @return <code>addX(element)</code> or <code>putX(key, value)</code>
+     * method of a collection field, allocating the builder collection on
+     * first use
+     */
+    public T createAdderMethod(VariableTree var) {
+        String fieldName = var.getName().toString();
+        CollectionKind kind = collections.get(fieldName);
+        List<T> arguments = new ArrayList<T>();
+        for (String name : kind.adderParameters(fieldName)) {
+            arguments.add(make.Identifier(name));
+        }
+        T body = block(
+                make.If(make.Binary(Tree.Kind.EQUAL_TO, select(THIS, fieldName), make.Literal(null)),
+                        block(assign(select(THIS, fieldName), createNewCollection(var))),
+                        null),
+                make.ExpressionStatement(make.MethodInvocation(Collections.<T>emptyList(),
+                        make.MemberSelect(select(THIS, fieldName), kind == CollectionKind.MAP ? "put" : "add"),
+                        arguments)),
+                make.Return(self()));
+
+        return make.Method(modifiers(Modifier.PUBLIC),
+                kind.adderName(fieldName),
+                type(setterType(var)),
+                Collections.<T>emptyList(),
+                adderParameters(var),
+                Collections.<T>emptyList(),
+                body);
+    }
+
+    /**
+     * @return abstract declaration of the adder, for a stage interface
+     */
+    public T createAdderDeclaration(VariableTree var) {
+        return make.Method(modifiers(),
+                getCollectionKind(var).adderName(var.getName().toString()),
+                type(setterType(var)),
+                Collections.<T>emptyList(),
+                adderParameters(var),
+                Collections.<T>emptyList(),
+                null);
+    }
+
+    /**
+     * @return abstract declaration of the setter, for a stage interface
+     */
+    public T createSetterDeclaration(VariableTree var) {
+        String fieldName = var.getName().toString();
+        T parameter = make.Variable(modifiers(),
+                fieldName,
+                make.Parsed(var.getType()),
+                null);
+        return make.Method(modifiers(),
+                resolveMethodName(fieldName),
+                type(setterType(var)),
+                Collections.<T>emptyList(),
+                Collections.singletonList(parameter),
+                Collections.<T>emptyList(),
+                null);
+    }
+
+    /**
+     * @return abstract declaration of <code>build()</code>, for the final
+     * stage interface
+     */
+    public T createBuildDeclaration(String className) {
+        return make.Method(modifiers(),
+                BUILD_METHOD_NAME,
+                type(className),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                null);
+    }
+
+    public boolean isCollection(VariableTree var) {
+        return collections.containsKey(var.getName().toString());
+    }
+
+    public CollectionKind getCollectionKind(VariableTree var) {
+        return collections.get(var.getName().toString());
+    }
+
+    /**
+     * @return <code>new ArrayList&lt;T&gt;()</code> for a collection field
+     */
+    public T createNewCollection(VariableTree var) {
+        return newInstance(getCollectionKind(var).getImplementation() + "<" + CollectionKind.typeArguments(var) + ">",
+                Collections.<T>emptyList());
+    }
+
+    /**
+     * @param owner <code>this</code>, a variable holding the builder or
+     * <code>null</code> for a parameter named like the field
+     * @return <code>source == null ? null : new ArrayList&lt;T&gt;(source)</code>
+     * where source is the field of <code>owner</code>
+     */
+    public T createCollectionCopy(VariableTree var, String owner) {
+        return make.ConditionalExpression(
+                make.Binary(Tree.Kind.EQUAL_TO, source(owner, var), make.Literal(null)),
+                make.Literal(null),
+                copy(var, source(owner, var)));
+    }
+
+    /**
+     * @param owner see {@link #createCollectionCopy(VariableTree, String)}
+     * @return <code>source == null ? Collections.&lt;T&gt;emptyList() :
+     * Collections.unmodifiableList(new ArrayList&lt;T&gt;(source))</code>
+     */
+    public T createUnmodifiableCopy(VariableTree var, String owner) {
+        CollectionKind kind = getCollectionKind(var);
+        List<T> typeArguments = new ArrayList<T>();
+        for (String type : CollectionKind.adderTypes(var)) {
+            typeArguments.add(type(type));
+        }
+        T empty = make.MethodInvocation(typeArguments,
+                make.MemberSelect(make.Identifier(CollectionKind.COLLECTIONS), kind.getEmptyMethod()),
+                Collections.<T>emptyList());
+        T unmodifiable = make.MethodInvocation(Collections.<T>emptyList(),
+                make.MemberSelect(make.Identifier(CollectionKind.COLLECTIONS), kind.getUnmodifiableMethod()),
+                Collections.singletonList(copy(var, source(owner, var))));
+        return make.ConditionalExpression(
+                make.Binary(Tree.Kind.EQUAL_TO, source(owner, var), make.Literal(null)),
+                empty,
+                unmodifiable);
+    }
+
+    public T createBuilderMethod(List<? extends TypeParameterTree> parameters) {
+        String paramatrized = buildParams(parameters);
+        return make.Method(modifiers(Modifier.PUBLIC, Modifier.STATIC),
+                BUILDER_METHOD_NAME,
+                type(builderMethodType != null ? builderMethodType : builderName + paramatrized),
+                typeParameters(parameters),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                block(make.Return(newInstance(builderName + paramatrized,
+                        Collections.<T>emptyList()))));
+    }
+
+    /**
+     * Same as {@link #createBuilderMethod(List)} but hands out the builder
+     * kept for the current thread, reset to initial values.
+     */
+    public T createThreadLocalBuilderMethod(List<? extends TypeParameterTree> parameters) {
+        String builderType = builderName + buildParams(parameters);
+        T modifiers = parameters.isEmpty()
+                ? modifiers(Modifier.PUBLIC, Modifier.STATIC)
+                : make.Modifiers(util.modifiers(Modifier.PUBLIC, Modifier.STATIC),
+                        Collections.singletonList(make.Annotation(make.Identifier("SuppressWarnings"),
+                                Collections.singletonList(make.Literal("unchecked")))));
+        return make.Method(modifiers,
+                BUILDER_METHOD_NAME,
+                type(builderMethodType != null ? builderMethodType : builderType),
+                typeParameters(parameters),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                createThreadLocalBuilderBody(builderType));
+    }
+
+    /**
+     * <code>Builder b = THREAD_BUILDER.get(); if (b == null) { b = new
+     * Builder(); THREAD_BUILDER.set(b); } return b.reset();</code>
+     */
+    private T createThreadLocalBuilderBody(String builderType) {
+        String threadBuilder = BuilderNames.THREAD_BUILDER_FIELD_NAME;
+        String builder = BUILDER_VARIABLE_NAME;
+        return block(
+                make.Variable(modifiers(), builder, type(builderType),
+                        invoke(make.Identifier(threadBuilder), "get")),
+                make.If(make.Binary(Tree.Kind.EQUAL_TO, make.Identifier(builder), make.Literal(null)),
+                        block(assign(make.Identifier(builder), newInstance(builderType, Collections.<T>emptyList())),
+                                make.ExpressionStatement(invoke(make.Identifier(threadBuilder), "set", make.Identifier(builder)))),
+                        null),
+                make.Return(invoke(make.Identifier(builder), RESET_METHOD_NAME)));
+    }
+
+    /**
+     * @return <code>reset()</code> method setting all builder fields back to
+     * their initial values
+     */
+    public T createResetMethod() {
+        List<T> statements = new ArrayList<T>();
+        for (VariableTree var : fields) {
+            if (isCollection(var)) {
+                statements.add(make.If(make.Binary(Tree.Kind.NOT_EQUAL_TO, select(THIS, var.getName()), make.Literal(null)),
+                        block(make.ExpressionStatement(invoke(select(THIS, var.getName()), "clear"))),
+                        null));
+            } else if (util.canProcess(var)) {
+                statements.add(assign(select(THIS, var.getName()), initialValue(var)));
+            }
+        }
+        statements.add(make.Return(make.Identifier(THIS)));
+        return make.Method(modifiers(Modifier.PUBLIC),
+                RESET_METHOD_NAME,
+                type(builderName),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                make.Block(statements));
+    }
+
+    /**
+     * @return <code>toBuilder()</code> of the target class, copying every
+     * field into a new builder. Builder collections are copied as well, so
+     * adders never touch the collections of the object.
+     */
+    public T createToBuilderMethod(List<? extends TypeParameterTree> parameters) {
+        String builderType = builderName + buildParams(parameters);
+        List<T> statements = new ArrayList<T>();
+        statements.add(make.Variable(modifiers(), BUILDER_VARIABLE_NAME, type(builderType),
+                newInstance(builderType, Collections.<T>emptyList())));
+        for (VariableTree var : fields) {
+            if (util.canProcess(var)) {
+                T value = isCollection(var)
+                        ? createCollectionCopy(var, THIS) : select(THIS, var.getName());
+                statements.add(assign(select(BUILDER_VARIABLE_NAME, var.getName()), value));
+            }
+        }
+        statements.add(make.Return(make.Identifier(BUILDER_VARIABLE_NAME)));
+        return make.Method(modifiers(Modifier.PUBLIC),
+                TO_BUILDER_METHOD_NAME,
+                type(builderType),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                make.Block(statements));
+    }
+
+    /**
+     * @return <code>withX(x)</code> of the target class, returning a copy of
+     * the object made by the parameterless constructor, with all fields
+     * copied and only <code>x</code> replaced
+     */
+    public T createCopyMethod(VariableTree var, String className, List<? extends TypeParameterTree> parameters) {
+        String type = className + buildParams(parameters);
+        String fieldName = var.getName().toString();
+        String copy = BuilderNames.COPY_VARIABLE_NAME;
+        List<T> statements = new ArrayList<T>();
+        statements.add(make.Variable(modifiers(), copy, type(type),
+                newInstance(type, Collections.<T>emptyList())));
+        for (VariableTree field : fields) {
+            if (util.canProcess(field)) {
+                T value = select(THIS, field.getName());
+                if (fieldName.contentEquals(field.getName())) {
+                    value = isCollection(field) ? createUnmodifiableCopy(field, null) : make.Identifier(fieldName);
+                }
+                statements.add(assign(select(copy, field.getName()), value));
+            }
+        }
+        statements.add(make.Return(make.Identifier(copy)));
+
+        T parameter = make.Variable(modifiers(),
+                fieldName,
+                make.Parsed(var.getType()),
+                null);
+        return make.Method(modifiers(Modifier.PUBLIC),
+                resolveMethodName(fieldName),
+                type(type),
+                Collections.<T>emptyList(),
+                Collections.singletonList(parameter),
+                Collections.<T>emptyList(),
+                make.Block(statements));
+    }
+
+    /**
+     * @return <code>withX(x)</code> of a record or a class with final fields,
+     * passing all fields to the all-args constructor with only
+     * <code>x</code> replaced
+     */
+    public T createDirectCopyMethod(VariableTree var, String className, List<? extends TypeParameterTree> parameters) {
+        String type = className + buildParams(parameters);
+        String fieldName = var.getName().toString();
+        List<T> arguments = new ArrayList<T>();
+        for (VariableTree field : fields) {
+            if (util.canProcess(field)) {
+                if (fieldName.contentEquals(field.getName())) {
+                    arguments.add(isCollection(field) ? createUnmodifiableCopy(field, null) : make.Identifier(fieldName));
+                } else {
+                    arguments.add(select(THIS, field.getName()));
+                }
+            }
+        }
+
+        T parameter = make.Variable(modifiers(),
+                fieldName,
+                make.Parsed(var.getType()),
+                null);
+        return make.Method(modifiers(Modifier.PUBLIC),
+                resolveMethodName(fieldName),
+                type(type),
+                Collections.<T>emptyList(),
+                Collections.singletonList(parameter),
+                Collections.<T>emptyList(),
+                block(make.Return(newInstance(type, arguments))));
+    }
+
+    public T createSetterMethod(VariableTree var) {
+        return prepareMethod(var);
+    }
+
+    public T createBuildMethod(String className) {
+        return make.Method(modifiers(Modifier.PUBLIC),
+                BUILD_METHOD_NAME,
+                type(className),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                block(make.Return(newInstance(className,
+                        Collections.singletonList(make.Identifier(THIS))))));
+    }
+
+    /**
+     * @return <code>self()</code> of a builder in a class hierarchy, abstract
+     * in the abstract builders and returning <code>this</code> in the
+     * concrete ones
+     */
+    public T createSelfMethod(String type, boolean declaration) {
+        T modifiers = declaration
+                ? modifiers(Modifier.PROTECTED, Modifier.ABSTRACT) : modifiers(Modifier.PROTECTED);
+        return make.Method(modifiers,
+                BuilderNames.SELF_METHOD_NAME,
+                type(type),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                declaration ? null : block(make.Return(make.Identifier(THIS))));
+    }
+
+    /**
+     * @return <code>public abstract T build();</code> of the abstract
+     * builder at the root of a class hierarchy
+     */
+    public T createAbstractBuildMethod(String type) {
+        return make.Method(modifiers(Modifier.PUBLIC, Modifier.ABSTRACT),
+                BUILD_METHOD_NAME,
+                type(type),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                null);
+    }
+
+    /**
+     * @return <code>build()</code> passing the builder fields to the
+     * canonical or all-args constructor, used for records and classes with
+     * final fields
+     *
+     * @param type target class with its type arguments
+     */
+    public T createDirectBuildMethod(String type) {
+        List<T> arguments = new ArrayList<T>();
+        for (VariableTree var : fields) {
+            if (util.canProcess(var)) {
+                arguments.add(isCollection(var) ? createUnmodifiableCopy(var, THIS) : select(THIS, var.getName()));
+            }
+        }
+        return make.Method(modifiers(Modifier.PUBLIC),
+                BUILD_METHOD_NAME,
+                type(type),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                Collections.<T>emptyList(),
+                block(make.Return(newInstance(type, arguments))));
+    }
+
+    /**
+     * @return <code>readFrom(JsonParser)</code> of the builder. Field names
+     * are matched by a switch on their hash code, computed here once, and
+     * <code>equals</code> only within the case, see {@link JsonKind#cases};
+     * unknown fields and values of unsupported fields are skipped.
+     */
+    public T createReadFromMethod(String builderType) {
+        String parser = BuilderNames.PARSER_PARAMETER_NAME;
+        T parameter = make.Variable(modifiers(),
+                parser,
+                type(JsonKind.PARSER),
+                null);
+        return make.Method(modifiers(Modifier.PUBLIC),
+                BuilderNames.READ_FROM_METHOD_NAME,
+                type(builderType),
+                Collections.<T>emptyList(),
+                Collections.singletonList(parameter),
+                Collections.singletonList(make.Identifier("IOException")),
+                createReadFromBody(parser));
+    }
+
+    /**
+     * <code>JsonToken token = parser.getCurrentToken(); ... while
+     * (parser.nextToken() == JsonToken.FIELD_NAME) { String field = ...;
+     * token = parser.nextToken(); if (token == JsonToken.START_OBJECT || ...)
+     * { parser.skipChildren(); continue; } switch (field.hashCode()) { ... }
+     * } return this;</code>. Every supported type is a scalar, so objects
+     * and arrays are skipped as a whole whatever field they belong to.
+     */
+    private T createReadFromBody(String parser) {
+        String token = "token";
+        String field = JsonKind.FIELD_VARIABLE_NAME;
+        List<T> loop = new ArrayList<T>();
+        loop.add(make.Variable(modifiers(), field, type("String"), invoke(make.Identifier(parser), "getCurrentName")));
+        loop.add(assign(make.Identifier(token), invoke(make.Identifier(parser), "nextToken")));
+        loop.add(make.If(make.Binary(Tree.Kind.CONDITIONAL_OR,
+                        make.Binary(Tree.Kind.EQUAL_TO, make.Identifier(token), select(JsonKind.TOKEN, "START_OBJECT")),
+                        make.Binary(Tree.Kind.EQUAL_TO, make.Identifier(token), select(JsonKind.TOKEN, "START_ARRAY"))),
+                block(make.ExpressionStatement(invoke(make.Identifier(parser), "skipChildren")), make.Continue()),
+                null));
+        Map<Integer, List<VariableTree>> hashes = JsonKind.cases(streamedFields());
+        if (!hashes.isEmpty()) {
+            List<T> cases = new ArrayList<T>();
+            for (Map.Entry<Integer, List<VariableTree>> entry : hashes.entrySet()) {
+                List<T> statements = new ArrayList<T>();
+                for (VariableTree var : entry.getValue()) {
+                    statements.add(make.If(invoke(make.Literal(var.getName().toString()), "equals", make.Identifier(field)),
+                            block(read(var, parser, token), make.Continue()),
+                            null));
+                }
+                statements.add(make.Break());
+                cases.add(make.Case(make.Literal(entry.getKey()), statements));
+            }
+            cases.add(make.Case(null, Collections.singletonList(make.Break())));
+            loop.add(make.Switch(invoke(make.Identifier(field), "hashCode"), cases));
+        }
+        List<T> statements = new ArrayList<T>();
+        statements.add(make.Variable(modifiers(), token, type(JsonKind.TOKEN), invoke(make.Identifier(parser), "getCurrentToken")));
+        statements.add(make.If(make.Binary(Tree.Kind.EQUAL_TO, make.Identifier(token), make.Literal(null)),
+                block(assign(make.Identifier(token), invoke(make.Identifier(parser), "nextToken"))),
+                null));
+        statements.add(make.If(make.Binary(Tree.Kind.NOT_EQUAL_TO, make.Identifier(token), select(JsonKind.TOKEN, "START_OBJECT")),
+                block(make.Throw(newInstance("IOException", Collections.singletonList(
+                        make.Binary(Tree.Kind.PLUS, make.Literal("Expected START_OBJECT but was "), make.Identifier(token)))))),
+                null));
+        statements.add(make.WhileLoop(make.Binary(Tree.Kind.EQUAL_TO, invoke(make.Identifier(parser), "nextToken"), select(JsonKind.TOKEN, "FIELD_NAME")),
+                make.Block(loop)));
+        statements.add(make.Return(make.Identifier(THIS)));
+        return make.Block(statements);
+    }
+
+    /**
+     * @return statement assigning the current value of the parser to the
+     * field. A <code>null</code> token leaves a primitive field as it is and
+     * sets any other one to <code>null</code>.
+     */
+    private T read(VariableTree var, String parser, String token) {
+        JsonKind kind = JsonKind.of(var);
+        T value = invoke(make.Identifier(parser), kind.getGetter());
+        if (kind != JsonKind.STRING && kind.isPrimitive(var)) {
+            return make.If(make.Binary(Tree.Kind.NOT_EQUAL_TO, make.Identifier(token), select(JsonKind.TOKEN, "VALUE_NULL")),
+                    block(assign(select(THIS, var.getName()), value)),
+                    null);
+        }
+        return assign(select(THIS, var.getName()), make.ConditionalExpression(
+                make.Binary(Tree.Kind.EQUAL_TO, make.Identifier(token), select(JsonKind.TOKEN, "VALUE_NULL")),
+                make.Literal(null),
+                kind == JsonKind.STRING ? value : invoke(make.Identifier(kind.getBoxed()), "valueOf", value)));
+    }
+
+    /**
+     * @return <code>writeTo(JsonGenerator)</code> of the target class,
+     * writing the supported fields as one JSON object
+     */
+    public T createWriteToMethod() {
+        String generator = BuilderNames.GENERATOR_PARAMETER_NAME;
+        T parameter = make.Variable(modifiers(),
+                generator,
+                type(JsonKind.GENERATOR),
+                null);
+        List<T> statements = new ArrayList<T>();
+        statements.add(make.ExpressionStatement(invoke(make.Identifier(generator), "writeStartObject")));
+        for (VariableTree var : streamedFields()) {
+            JsonKind kind = JsonKind.of(var);
+            if (kind != null) {
+                statements.add(write(var, kind, generator));
+            }
+        }
+        statements.add(make.ExpressionStatement(invoke(make.Identifier(generator), "writeEndObject")));
+        return make.Method(modifiers(Modifier.PUBLIC),
+                BuilderNames.WRITE_TO_METHOD_NAME,
+                make.PrimitiveType(TypeKind.VOID),
+                Collections.<T>emptyList(),
+                Collections.singletonList(parameter),
+                Collections.singletonList(make.Identifier("IOException")),
+                make.Block(statements));
+    }
+
+    /**
+     * @return statement writing the field, checked for <code>null</code>
+     * for boxed types
+     */
+    private T write(VariableTree var, JsonKind kind, String generator) {
+        String name = var.getName().toString();
+        T field = make.ExpressionStatement(invoke(make.Identifier(generator), kind.getWriter(),
+                make.Literal(name), select(THIS, name)));
+        if (kind == JsonKind.STRING || kind.isPrimitive(var)) {
+            return field;
+        }
+        return make.If(make.Binary(Tree.Kind.EQUAL_TO, select(THIS, name), make.Literal(null)),
+                block(make.ExpressionStatement(invoke(make.Identifier(generator), "writeNullField", make.Literal(name)))),
+                block(field));
+    }
+
+    private List<VariableTree> streamedFields() {
+        List<VariableTree> streamed = new ArrayList<VariableTree>();
+        for (VariableTree var : fields) {
+            if (util.canProcess(var)) {
+                streamed.add(var);
+            }
+        }
+        return streamed;
+    }
+
+    /**
+     * Every member asks for the type arguments of the same class, so the
+     * string is kept for the last list of parameters seen.
+     */
+    protected String buildParams(List<? extends TypeParameterTree> parameters) {
+        if (parameters != typeArgumentsOf) {
+            typeArguments = BuilderNames.typeArguments(parameters);
+            typeArgumentsOf = parameters;
+        }
+        return typeArguments;
+    }
+
+    /**
+     * @return new elements for the type parameters of the class, one list
+     * per member declaring them
+     */
+    List<T> typeParameters(List<? extends TypeParameterTree> parameters) {
+        List<T> typeParameters = new ArrayList<T>(parameters.size());
+        for (TypeParameterTree parameter : parameters) {
+            typeParameters.add(make.Parsed(parameter));
+        }
+        return typeParameters;
+    }
+
+    /**
+     * Every call makes a new element, an element must not have two parents:
+     * the working copy may rewrite any of them later on. Only the set of
+     * modifiers is shared, see {@link Util#modifiers}.
+     */
+    T modifiers(Modifier... mods) {
+        return make.Modifiers(util.modifiers(mods));
+    }
+
+    /**
+     * @return new element of the type, see {@link #modifiers}
+     */
+    T type(String name) {
+        return make.Type(name);
+    }
+
+    private String resolveMethodName(String fieldName) {
+        return BuilderNames.methodName(prefix, fieldName);
+    }
+
+    private T prepareMethod(VariableTree var) {
+        String fieldName = var.getName().toString();
+        T parameter = make.Variable(modifiers(),
+                fieldName,
+                make.Parsed(var.getType()),
+                null);
+
+        return make.Method(modifiers(Modifier.PUBLIC),
+                resolveMethodName(fieldName),
+                type(setterType(var)),
+                Collections.<T>emptyList(),
+                Collections.singletonList(parameter),
+                Collections.<T>emptyList(),
+                setterBody(var));
+    }
+
+    private String setterType(VariableTree var) {
+        String type = setterTypes.get(var.getName().toString());
+        return type != null ? type : builderName;
+    }
+
+    private List<T> adderParameters(VariableTree var) {
+        String fieldName = var.getName().toString();
+        String[] names = getCollectionKind(var).adderParameters(fieldName);
+        String[] types = CollectionKind.adderTypes(var);
+        List<T> parameters = new ArrayList<T>();
+        for (int i = 0; i < names.length; i++) {
+            parameters.add(make.Variable(modifiers(), names[i], type(types[i]), null));
+        }
+        return parameters;
+    }
+
+    /**
+     * Collections passed to a setter are copied, so that adders never
+     * modify a collection owned by the caller.
+     */
+    private T setterBody(VariableTree var) {
+        T value = isCollection(var) ? createCollectionCopy(var, null) : make.Identifier(var.getName());
+        return block(assign(select(THIS, var.getName()), value),
+                make.Return(self()));
+    }
+
+    /**
+     * @return initial value of the field: its initializer or the default
+     * value of its type. A bare array initializer gets its type, it is not
+     * allowed on the right side of an assignment.
+     */
+    private T initialValue(VariableTree var) {
+        ExpressionTree initializer = var.getInitializer();
+        Tree type = var.getType();
+        if (initializer != null) {
+            if (initializer.getKind() == Tree.Kind.NEW_ARRAY && ((NewArrayTree) initializer).getType() == null
+                    && type.getKind() == Tree.Kind.ARRAY_TYPE) {
+                List<T> initializers = new ArrayList<T>();
+                for (ExpressionTree element : ((NewArrayTree) initializer).getInitializers()) {
+                    initializers.add(make.Parsed(element));
+                }
+                return make.NewArray(make.Parsed(((ArrayTypeTree) type).getType()), initializers);
+            }
+            return make.Parsed(initializer);
+        }
+        if (type.getKind() == Tree.Kind.PRIMITIVE_TYPE) {
+            return ((PrimitiveTypeTree) type).getPrimitiveTypeKind() == TypeKind.BOOLEAN
+                    ? make.Literal(Boolean.FALSE) : make.Literal(0);
+        }
+        return make.Literal(null);
+    }
+
+    private T copy(VariableTree var, T source) {
+        return newInstance(getCollectionKind(var).getImplementation() + "<" + CollectionKind.typeArguments(var) + ">",
+                Collections.singletonList(source));
+    }
+
+    private T source(String owner, VariableTree var) {
+        return owner == null ? make.Identifier(var.getName()) : select(owner, var.getName());
+    }
+
+    private T newInstance(String type, List<T> arguments) {
+        return make.NewClass(type(type), arguments);
+    }
+
+    private T self() {
+        if (returnSelf) {
+            return make.MethodInvocation(Collections.<T>emptyList(),
+                    make.Identifier(BuilderNames.SELF_METHOD_NAME),
+                    Collections.<T>emptyList());
+        }
+        return make.Identifier(THIS);
+    }
+
+    private T select(String owner, CharSequence member) {
+        return make.MemberSelect(make.Identifier(owner), member);
+    }
+
+    private T invoke(T target, String method) {
+        return invoke(target, method, Collections.<T>emptyList());
+    }
+
+    private T invoke(T target, String method, T argument) {
+        return invoke(target, method, Collections.singletonList(argument));
+    }
+
+    private T invoke(T target, String method, T first, T second) {
+        return invoke(target, method, list(first, second));
+    }
+
+    private T invoke(T target, String method, List<T> arguments) {
+        return make.MethodInvocation(Collections.<T>emptyList(),
+                make.MemberSelect(target, method),
+                arguments);
+    }
+
+    private T assign(T variable, T value) {
+        return make.ExpressionStatement(make.Assignment(variable, value));
+    }
+
+    private T block(T statement) {
+        return make.Block(Collections.singletonList(statement));
+    }
+
+    private T block(T first, T second) {
+        return make.Block(list(first, second));
+    }
+
+    private T block(T first, T second, T third) {
+        List<T> statements = list(first, second);
+        statements.add(third);
+        return make.Block(statements);
+    }
+
+    /**
+     * Generic varargs would create an array of a type variable on every
+     * call, hence the fixed arities.
+     */
+    private List<T> list(T first, T second) {
+        List<T> list = new ArrayList<T>(3);
+        list.add(first);
+        list.add(second);
+        return list;
+    }
+}
@@ -0,0 +1,78 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+/**
+ * Source text made by {@link SourceMaker}. Lines are separated by
+ * <code>\n</code> and indented relative to the first one, the editor puts
+ * them at the indentation and with the line separator of the file they go
+ * to.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public final class Snippet {
+
+    private final String text;
+    private final boolean variable;
+
+    Snippet(String text) {
+        this(text, false);
+    }
+
+    Snippet(String text, boolean variable) {
+        this.text = text;
+        this.variable = variable;
+    }
+
+    /**
+     * @return <code>true</code> for a variable declaration, which needs a
+     * semicolon when it is a field or a statement but not as a parameter
+     */
+    public boolean isVariable() {
+        return variable;
+    }
+
+    /**
+     * @return the text, terminated by a semicolon if it is a variable
+     * declared on its own
+     */
+    public String declaration() {
+        return variable ? text + ';' : text;
+    }
+
+    /**
+     * @return <code>true</code> if the text takes one line only
+     */
+    public boolean isSingleLine() {
+        return text.indexOf('\n') < 0;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
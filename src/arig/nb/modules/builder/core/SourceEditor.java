@@ -0,0 +1,402 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.SourcePositions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Edits the source text of a parsed compilation unit at the positions
+ * reported by the parser, the rest of the file is left untouched. Members
+ * added to the same class go in front of its closing brace together, in the
+ * order they were added. Edits are applied by {@link #getResult()}, they
+ * must not overlap.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class SourceEditor implements CodeEditor<Snippet> {
+
+    private final CompilationUnitTree cut;
+    private final SourcePositions positions;
+    private final CharSequence source;
+    private final String lineSeparator;
+    private final Util util = new Util();
+    private final List<Edit> edits = new ArrayList<Edit>();
+    private final Map<Tree, List<Snippet>> appended = new LinkedHashMap<Tree, List<Snippet>>();
+    private final Set<String> imports = new LinkedHashSet<String>();
+    private final Map<String, String> files = new LinkedHashMap<String, String>();
+
+    /**
+     * @param cut parsed compilation unit
+     * @param positions positions of the trees in <code>source</code>
+     * @param source text <code>cut</code> was parsed from
+     */
+    public SourceEditor(CompilationUnitTree cut, SourcePositions positions, CharSequence source) {
+        this.cut = cut;
+        this.positions = positions;
+        this.source = source;
+        this.lineSeparator = lineSeparator(source);
+    }
+
+    public void addMember(ClassTree clazz, Snippet member) {
+        appended(clazz).add(member);
+    }
+
+    /**
+     * The member goes on the line in front of <code>before</code> and its
+     * comment, followed by a blank line.
+     */
+    public void insertMember(ClassTree clazz, Tree before, Snippet member) {
+        int start = (int) positions.getStartPosition(cut, before);
+        int lineStart = lineStart(commentStart(start));
+        add(lineStart, lineStart, SourceMaker.indent(member.declaration(), indentOf(start)) + "\n\n");
+    }
+
+    public void removeMember(ClassTree clazz, Tree member) {
+        remove(member, true);
+    }
+
+    /**
+     * The replacement takes the place of the tree, its comment is kept.
+     */
+    public void replace(Tree original, Snippet replacement) {
+        int start = (int) positions.getStartPosition(cut, original);
+        int end = (int) positions.getEndPosition(cut, original);
+        String text = source.charAt(end - 1) == ';' ? replacement.declaration() : replacement.toString();
+        String indent = indentOf(start);
+        add(start, end, SourceMaker.indent(text, indent).substring(text.length() > 0 && text.charAt(0) != '\n' ? indent.length() : 0));
+    }
+
+    public void addStatement(BlockTree block, Snippet statement) {
+        appended(block).add(statement);
+    }
+
+    public void removeStatement(BlockTree block, StatementTree statement) {
+        remove(statement, false);
+    }
+
+    public void addImport(String qualifiedName) {
+        imports.add(qualifiedName);
+    }
+
+    public boolean canCreateFiles() {
+        return true;
+    }
+
+    /**
+     * The file is in the package of the compilation unit and gets the same
+     * imports, plus the given ones, see {@link #getFiles()} and
+     * {@link Util#fileImports}.
+     */
+    public void createFile(String className, Collection<String> classImports, Snippet clazz) {
+        StringBuilder sb = new StringBuilder();
+        if (cut.getPackageName() != null) {
+            sb.append("package ").append(cut.getPackageName()).append(";\n\n");
+        }
+        int importsStart = sb.length();
+        for (String qualifiedName : util.fileImports(cut, classImports, false)) {
+            sb.append("import ").append(qualifiedName).append(";\n");
+        }
+        for (String qualifiedName : util.fileImports(cut, classImports, true)) {
+            sb.append("import static ").append(qualifiedName).append(";\n");
+        }
+        if (sb.length() > importsStart) {
+            sb.append('\n');
+        }
+        sb.append(clazz).append('\n');
+        String folder = cut.getPackageName() == null ? "" : cut.getPackageName().toString().replace('.', '/') + "/";
+        files.put(folder + className + ".java", separators(sb.toString()));
+    }
+
+    /**
+     * @return sources of the created files by their path relative to the
+     * source root
+     */
+    public Map<String, String> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return the edited source, or <code>null</code> if it is the same as
+     * before
+     * @throws IllegalStateException if two edits overlap
+     */
+    public String getResult() {
+        List<Edit> all = new ArrayList<Edit>(edits);
+        for (Map.Entry<Tree, List<Snippet>> entry : appended.entrySet()) {
+            all.add(entry.getKey() instanceof BlockTree
+                    ? statements((BlockTree) entry.getKey(), entry.getValue())
+                    : members((ClassTree) entry.getKey(), entry.getValue()));
+        }
+        Edit importsEdit = imports();
+        if (importsEdit != null) {
+            all.add(importsEdit);
+        }
+        if (all.isEmpty()) {
+            return null;
+        }
+        Collections.sort(all);
+        StringBuilder sb = new StringBuilder(source.length() + all.size() * 256);
+        int copied = 0;
+        for (Edit edit : all) {
+            if (edit.start < copied) {
+                throw new IllegalStateException("Overlapping edits at " + edit.start + " in " + cut.getSourceFile().getName());
+            }
+            sb.append(source, copied, edit.start).append(edit.text);
+            copied = edit.end;
+        }
+        sb.append(source, copied, source.length());
+        String result = sb.toString();
+        return result.contentEquals(source) ? null : result;
+    }
+
+    private List<Snippet> appended(Tree tree) {
+        List<Snippet> snippets = appended.get(tree);
+        if (snippets == null) {
+            snippets = new ArrayList<Snippet>();
+            appended.put(tree, snippets);
+        }
+        return snippets;
+    }
+
+    private void add(int start, int end, String text) {
+        edits.add(new Edit(start, end, separators(text), edits.size()));
+    }
+
+    /**
+     * Removes the lines of the tree and its comment, along with a blank
+     * line in front of a member. Anything else on these lines stays.
+     */
+    private void remove(Tree tree, boolean member) {
+        int start = commentStart((int) positions.getStartPosition(cut, tree));
+        int end = (int) positions.getEndPosition(cut, tree);
+        int lineStart = lineStart(start);
+        if (isBlank(lineStart, start)) {
+            start = lineStart;
+            int lineEnd = end;
+            while (lineEnd < source.length() && isBlank(source.charAt(lineEnd))) {
+                lineEnd++;
+            }
+            if (lineEnd < source.length() && source.charAt(lineEnd) == '\r') {
+                lineEnd++;
+            }
+            if (lineEnd < source.length() && source.charAt(lineEnd) == '\n') {
+                end = lineEnd + 1;
+            }
+            if (member && start > 0) {
+                int previousLine = lineStart(start - 1);
+                if (isBlank(previousLine, start - 1)) {
+                    start = previousLine;
+                }
+            }
+        }
+        add(start, end, "");
+    }
+
+    /**
+     * Members go just before the closing brace of the class. If the brace
+     * is on its own line they are inserted in front of that line, otherwise
+     * the brace is moved to a new line and the blanks in front of it are
+     * dropped.
+     */
+    private Edit members(ClassTree clazz, List<Snippet> members) {
+        int closingBrace = (int) positions.getEndPosition(cut, clazz) - 1;
+        String classIndent = indentOf((int) positions.getStartPosition(cut, clazz));
+        String text = SourceMaker.members(members, classIndent + SourceMaker.INDENT) + "\n";
+        int lineStart = closingBrace;
+        while (lineStart > 0 && isBlank(source.charAt(lineStart - 1))) {
+            lineStart--;
+        }
+        if (lineStart == 0 || source.charAt(lineStart - 1) == '\n') {
+            return new Edit(lineStart, lineStart, separators("\n" + text), edits.size());
+        }
+        return new Edit(lineStart, closingBrace, separators("\n\n" + text + classIndent), edits.size());
+    }
+
+    /**
+     * Statements go just before the closing brace of the block, one per
+     * line.
+     */
+    private Edit statements(BlockTree block, List<Snippet> statements) {
+        int closingBrace = (int) positions.getEndPosition(cut, block) - 1;
+        String blockIndent = indentOf(closingBrace);
+        StringBuilder sb = new StringBuilder();
+        for (Snippet statement : statements) {
+            sb.append(SourceMaker.indent(statement.declaration(), blockIndent + SourceMaker.INDENT)).append('\n');
+        }
+        int lineStart = closingBrace;
+        while (lineStart > 0 && isBlank(source.charAt(lineStart - 1))) {
+            lineStart--;
+        }
+        if (lineStart == 0 || source.charAt(lineStart - 1) == '\n') {
+            return new Edit(lineStart, lineStart, separators(sb.toString()), edits.size());
+        }
+        String braceIndent = indentOf((int) positions.getStartPosition(cut, block));
+        return new Edit(lineStart, closingBrace, separators("\n" + SourceMaker.indent(sb.toString(), braceIndent) + braceIndent),
+                edits.size());
+    }
+
+    /**
+     * Imports missing for the generated code go after the last import, or
+     * after the package declaration when there is none.
+     */
+    private Edit imports() {
+        StringBuilder sb = new StringBuilder();
+        for (String qualifiedName : imports) {
+            if (!util.isImported(cut, qualifiedName)) {
+                sb.append(lineSeparator).append("import ").append(qualifiedName).append(';');
+            }
+        }
+        if (sb.length() == 0) {
+            return null;
+        }
+        List<? extends ImportTree> cutImports = cut.getImports();
+        if (!cutImports.isEmpty()) {
+            int end = (int) positions.getEndPosition(cut, cutImports.get(cutImports.size() - 1));
+            return new Edit(end, end, sb.toString(), edits.size());
+        }
+        int end = 0;
+        if (cut.getPackageName() != null) {
+            end = (int) positions.getEndPosition(cut, cut.getPackageName());
+            while (end < source.length() && source.charAt(end) != ';') {
+                end++;
+            }
+            end++;
+            sb.insert(0, lineSeparator);
+        } else {
+            sb.delete(0, lineSeparator.length()).append(lineSeparator).append(lineSeparator);
+        }
+        return new Edit(end, end, sb.toString(), edits.size());
+    }
+
+    /**
+     * Parser positions of a member start after its documentation, the
+     * comment right in front of it belongs to it as well.
+     *
+     * @return start of the comment ending just before
+     * <code>position</code>, or <code>position</code> if there is none
+     */
+    private int commentStart(int position) {
+        int end = position;
+        while (end > 0 && Character.isWhitespace(source.charAt(end - 1))) {
+            end--;
+        }
+        if (end >= 2 && source.charAt(end - 1) == '/' && source.charAt(end - 2) == '*') {
+            int start = source.toString().lastIndexOf("/*", end - 2);
+            if (start >= 0) {
+                return start;
+            }
+        }
+        return position;
+    }
+
+    private int lineStart(int position) {
+        int lineStart = position;
+        while (lineStart > 0 && source.charAt(lineStart - 1) != '\n') {
+            lineStart--;
+        }
+        return lineStart;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isBlank(source.charAt(i)) && source.charAt(i) != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String indentOf(int position) {
+        int lineStart = lineStart(position);
+        int indentEnd = lineStart;
+        while (indentEnd < position && isBlank(source.charAt(indentEnd))) {
+            indentEnd++;
+        }
+        return source.subSequence(lineStart, indentEnd).toString();
+    }
+
+    private boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private String separators(String text) {
+        return "\n".equals(lineSeparator) ? text : text.replace("\n", lineSeparator);
+    }
+
+    private static String lineSeparator(CharSequence source) {
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                return i > 0 && source.charAt(i - 1) == '\r' ? "\r\n" : "\n";
+            }
+        }
+        return System.getProperty("line.separator");
+    }
+
+    private static class Edit implements Comparable<Edit> {
+
+        private final int start;
+        private final int end;
+        private final String text;
+        private final int sequence;
+
+        Edit(int start, int end, String text, int sequence) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Edits at the same position keep the order they were made in,
+         * insertions go before a replacement starting there.
+         */
+        public int compareTo(Edit other) {
+            if (start != other.start) {
+                return start < other.start ? -1 : 1;
+            }
+            if (end != other.end) {
+                return end < other.end ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
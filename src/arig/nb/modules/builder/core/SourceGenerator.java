@@ -0,0 +1,246 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.SourcePositions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Adds builders to the source text of a parsed compilation unit, for top
+ * level as well as static nested classes, or updates the builders they have
+ * already. The builders are made by the same {@link ClassGenerator} the IDE
+ * uses, with a {@link SourceMaker} and a {@link SourceEditor}, so the text
+ * is edited directly at the positions reported by the parser and the rest of
+ * the file is left untouched. A generator holds no state of its own besides
+ * the levels, so once they are set it can be shared by threads generating
+ * different files.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class SourceGenerator {
+
+    public static final String INDENT = SourceMaker.INDENT;
+    private final BuilderOptions options;
+    private final Util util;
+    private Set<String> levels = Collections.emptySet();
+
+    public SourceGenerator(BuilderOptions options) {
+        this.options = options;
+        this.util = new Util();
+    }
+
+    /**
+     * Nothing is attributed, so with {@link BuilderOptions#isHierarchy} a
+     * superclass is resolved by the imports and the package of the
+     * compilation unit only. Classes extending one of the given classes
+     * extend its builder.
+     *
+     * @param levels qualified names of the abstract classes with a builder,
+     * see {@link #collectLevels}
+     */
+    public void setLevels(Set<String> levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * Adds the qualified names of the abstract classes of the compilation
+     * unit, top level as well as nested, to <code>levels</code>.
+     */
+    public void collectLevels(CompilationUnitTree cut, Set<String> levels) {
+        for (Tree typeDecl : cut.getTypeDecls()) {
+            if (util.isClassLike(typeDecl)) {
+                collectLevels((ClassTree) typeDecl, packagePrefix(cut), levels);
+            }
+        }
+    }
+
+    private void collectLevels(ClassTree clazz, String prefix, Set<String> levels) {
+        String name = prefix + clazz.getSimpleName();
+        if (clazz.getKind() == Tree.Kind.CLASS && clazz.getModifiers().getFlags().contains(Modifier.ABSTRACT)) {
+            levels.add(name);
+        }
+        for (Tree member : clazz.getMembers()) {
+            if (util.isClassLike(member)) {
+                collectLevels((ClassTree) member, name + ".", levels);
+            }
+        }
+    }
+
+    /**
+     * @param cut parsed compilation unit
+     * @param positions positions of the trees in <code>source</code>
+     * @param source text <code>cut</code> was parsed from
+     * @return modified source, or <code>null</code> when nothing changed
+     */
+    public String generate(CompilationUnitTree cut, SourcePositions positions, CharSequence source) {
+        return generate(cut, positions, source, null, null);
+    }
+
+    /**
+     * @param builderFiles receives the sources of the builders going to
+     * files of their own, keyed by their path relative to the source root,
+     * see {@link BuilderOptions#isSeparateFile}; may be <code>null</code>
+     * when the option is off
+     * @param skipped receives a message for every class left without a
+     * builder, see {@link ClassGenerator#generate}; may be <code>null</code>
+     * @return modified source, or <code>null</code> when the class did not
+     * change, which is also the case when only its builder file is
+     * regenerated
+     */
+    public String generate(CompilationUnitTree cut, SourcePositions positions, CharSequence source,
+            final Map<String, String> builderFiles, List<String> skipped) {
+        SourceEditor editor = new SourceEditor(cut, positions, source) {
+
+            @Override
+            public boolean canCreateFiles() {
+                return options.isSeparateFile() && builderFiles != null;
+            }
+        };
+        ClassGenerator<Snippet> generator = new ClassGenerator<Snippet>(new SourceMaker(), editor, options);
+        for (Tree typeDecl : cut.getTypeDecls()) {
+            if (util.isClassLike(typeDecl)) {
+                generate(generator, cut, (ClassTree) typeDecl, packagePrefix(cut), true, skipped);
+            }
+        }
+        if (builderFiles != null) {
+            builderFiles.putAll(editor.getFiles());
+        }
+        return editor.getResult();
+    }
+
+    /**
+     * Generates the builder of the class and then those of its static nested
+     * classes. Nested builders end up inside the nested class, in front of
+     * its own closing brace.
+     *
+     * @param prefix package and enclosing classes of the class, followed by
+     * a dot
+     */
+    private void generate(ClassGenerator<Snippet> generator, CompilationUnitTree cut, ClassTree clazz, String prefix,
+            boolean topLevel, List<String> skipped) {
+        if (util.canGenerate(clazz)) {
+            List<VariableTree> fields = new ArrayList<VariableTree>();
+            Map<String, CollectionKind> collections = new HashMap<String, CollectionKind>();
+            boolean hasEmptyConstructor = false;
+            for (Tree member : clazz.getMembers()) {
+                if (member.getKind() == Tree.Kind.VARIABLE && util.canProcess((VariableTree) member)) {
+                    VariableTree field = (VariableTree) member;
+                    fields.add(field);
+                    CollectionKind kind = options.isCollections() ? CollectionKind.of(field, cut.getImports()) : null;
+                    if (kind != null) {
+                        collections.put(field.getName().toString(), kind);
+                    }
+                } else if (member.getKind() == Tree.Kind.METHOD && isEmptyConstructor((MethodTree) member)) {
+                    hasEmptyConstructor = true;
+                }
+            }
+            boolean generated = generator.generate(clazz, fields, collections, hasEmptyConstructor,
+                    superclassWithBuilder(cut, clazz, prefix), topLevel);
+            if (!generated && skipped != null) {
+                skipped.add(prefix + clazz.getSimpleName() + ": " + ClassGenerator.REORDERED_CONSTRUCTOR);
+            }
+        }
+        String name = prefix + clazz.getSimpleName() + ".";
+        for (Tree member : clazz.getMembers()) {
+            if (util.isClassLike(member) && util.canHaveBuilder(clazz, (ClassTree) member)) {
+                generate(generator, cut, (ClassTree) member, name, false, skipped);
+            }
+        }
+    }
+
+    /**
+     * Parser trees never contain the default constructor javac adds later,
+     * so every parameterless constructor found here was written by hand.
+     */
+    private boolean isEmptyConstructor(MethodTree mt) {
+        return BuilderNames.CONSTRUCTOR_NAME.contentEquals(mt.getName())
+                && mt.getReturnType() == null
+                && mt.getParameters().isEmpty();
+    }
+
+    /**
+     * The superclass is looked up the way javac would without attributing:
+     * as a class nested in the enclosing classes, by the single type
+     * imports, in the package and by the imports on demand.
+     *
+     * @return the <code>extends</code> clause if it names one of the levels,
+     * otherwise <code>null</code>
+     */
+    private Tree superclassWithBuilder(CompilationUnitTree cut, ClassTree clazz, String prefix) {
+        Tree superclass = clazz.getExtendsClause();
+        if (!options.isHierarchy() || superclass == null) {
+            return null;
+        }
+        Tree type = superclass.getKind() == Tree.Kind.PARAMETERIZED_TYPE
+                ? ((ParameterizedTypeTree) superclass).getType() : superclass;
+        String name = type.toString();
+        int dot = name.indexOf('.');
+        String first = dot < 0 ? name : name.substring(0, dot);
+        String rest = dot < 0 ? "" : name.substring(dot);
+
+        for (String outer = prefix; outer.length() > 0; outer = outer.substring(0, outer.lastIndexOf('.', outer.length() - 2) + 1)) {
+            if (levels.contains(outer + name)) {
+                return superclass;
+            }
+        }
+        for (ImportTree importTree : cut.getImports()) {
+            String imported = importTree.getQualifiedIdentifier().toString();
+            if (!importTree.isStatic() && imported.endsWith("." + first)) {
+                return levels.contains(imported + rest) ? superclass : null;
+            }
+        }
+        if (levels.contains(packagePrefix(cut) + name) || levels.contains(name)) {
+            return superclass;
+        }
+        for (ImportTree importTree : cut.getImports()) {
+            String imported = importTree.getQualifiedIdentifier().toString();
+            if (!importTree.isStatic() && imported.endsWith(".*")
+                    && levels.contains(imported.substring(0, imported.length() - 1) + name)) {
+                return superclass;
+            }
+        }
+        return null;
+    }
+
+    private static String packagePrefix(CompilationUnitTree cut) {
+        return cut.getPackageName() == null ? "" : cut.getPackageName() + ".";
+    }
+}
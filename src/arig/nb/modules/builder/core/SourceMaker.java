@@ -0,0 +1,348 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.core;
+
+import com.sun.source.tree.Tree;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Makes source text in the layout the IDE formatter gives to the trees of
+ * the same builder: one statement per line, blocks indented by
+ * {@link #INDENT}, braces at the end of the line and a blank line in front
+ * of every member spanning several lines. Trees of the parsed source are
+ * printed by javac.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class SourceMaker implements CodeMaker<Snippet> {
+
+    public static final String INDENT = "    ";
+
+    public Snippet Modifiers(Set<Modifier> flags) {
+        return Modifiers(flags, null);
+    }
+
+    public Snippet Modifiers(Set<Modifier> flags, List<? extends Snippet> annotations) {
+        StringBuilder sb = new StringBuilder();
+        if (annotations != null) {
+            for (Snippet annotation : annotations) {
+                sb.append(annotation).append('\n');
+            }
+        }
+        for (Modifier flag : flags) {
+            sb.append(flag).append(' ');
+        }
+        return new Snippet(sb.toString());
+    }
+
+    public Snippet Annotation(Snippet type, List<? extends Snippet> arguments) {
+        return new Snippet('@' + type.toString() + (arguments.isEmpty() ? "" : '(' + join(arguments, ", ") + ')'));
+    }
+
+    public Snippet Type(String type) {
+        return new Snippet(type);
+    }
+
+    public Snippet PrimitiveType(TypeKind kind) {
+        return new Snippet(kind.name().toLowerCase());
+    }
+
+    public Snippet Parsed(Tree tree) {
+        return new Snippet(tree.toString());
+    }
+
+    public Snippet TypeParameter(CharSequence name, List<? extends Snippet> bounds) {
+        return new Snippet(bounds.isEmpty() ? name.toString() : name + " extends " + join(bounds, " & "));
+    }
+
+    public Snippet Variable(Snippet modifiers, CharSequence name, Snippet type, Snippet initializer) {
+        return new Snippet(modifiers.toString() + type + ' ' + name + (initializer == null ? "" : " = " + initializer), true);
+    }
+
+    public Snippet Constructor(Snippet modifiers, CharSequence className, List<? extends Snippet> parameters, Snippet body) {
+        return new Snippet(modifiers.toString() + className + '(' + join(parameters, ", ") + ") " + body);
+    }
+
+    public Snippet Method(Snippet modifiers, CharSequence name, Snippet returnType, List<? extends Snippet> typeParameters,
+            List<? extends Snippet> parameters, List<? extends Snippet> thrown, Snippet body) {
+        StringBuilder sb = new StringBuilder(modifiers.toString());
+        if (!typeParameters.isEmpty()) {
+            sb.append('<').append(join(typeParameters, ", ")).append("> ");
+        }
+        sb.append(returnType).append(' ').append(name).append('(').append(join(parameters, ", ")).append(')');
+        if (!thrown.isEmpty()) {
+            sb.append(" throws ").append(join(thrown, ", "));
+        }
+        sb.append(body == null ? ";" : " " + body);
+        return new Snippet(sb.toString());
+    }
+
+    public Snippet Class(Snippet modifiers, CharSequence name, List<? extends Snippet> typeParameters, Snippet extendsClause,
+            List<? extends Snippet> implementsClauses, List<? extends Snippet> members) {
+        StringBuilder sb = new StringBuilder(modifiers.toString()).append("class ").append(name);
+        if (!typeParameters.isEmpty()) {
+            sb.append('<').append(join(typeParameters, ", ")).append('>');
+        }
+        if (extendsClause != null) {
+            sb.append(" extends ").append(extendsClause);
+        }
+        if (!implementsClauses.isEmpty()) {
+            sb.append(" implements ").append(join(implementsClauses, ", "));
+        }
+        return new Snippet(sb.append(' ').append(classBody(members)).toString());
+    }
+
+    public Snippet Interface(Snippet modifiers, CharSequence name, List<? extends Snippet> typeParameters,
+            List<? extends Snippet> members) {
+        StringBuilder sb = new StringBuilder(modifiers.toString()).append("interface ").append(name);
+        if (!typeParameters.isEmpty()) {
+            sb.append('<').append(join(typeParameters, ", ")).append('>');
+        }
+        return new Snippet(sb.append(' ').append(classBody(members)).toString());
+    }
+
+    public Snippet Block(List<? extends Snippet> statements) {
+        StringBuilder sb = new StringBuilder("{\n");
+        for (Snippet statement : statements) {
+            sb.append(indent(statement.declaration(), INDENT)).append('\n');
+        }
+        return new Snippet(sb.append('}').toString());
+    }
+
+    public Snippet Return(Snippet expression) {
+        return new Snippet(expression == null ? "return;" : "return " + expression + ';');
+    }
+
+    public Snippet ExpressionStatement(Snippet expression) {
+        return new Snippet(expression.toString() + ';');
+    }
+
+    public Snippet If(Snippet condition, Snippet thenStatement, Snippet elseStatement) {
+        return new Snippet("if (" + condition + ") " + thenStatement.declaration()
+                + (elseStatement == null ? "" : " else " + elseStatement.declaration()));
+    }
+
+    public Snippet WhileLoop(Snippet condition, Snippet body) {
+        return new Snippet("while (" + condition + ") " + body.declaration());
+    }
+
+    public Snippet Switch(Snippet expression, List<? extends Snippet> cases) {
+        StringBuilder sb = new StringBuilder("switch (").append(expression).append(") {\n");
+        for (Snippet c : cases) {
+            sb.append(indent(c.toString(), INDENT)).append('\n');
+        }
+        return new Snippet(sb.append('}').toString());
+    }
+
+    public Snippet Case(Snippet expression, List<? extends Snippet> statements) {
+        StringBuilder sb = new StringBuilder(expression == null ? "default:" : "case " + expression + ':');
+        for (Snippet statement : statements) {
+            sb.append('\n').append(indent(statement.declaration(), INDENT));
+        }
+        return new Snippet(sb.toString());
+    }
+
+    public Snippet Break() {
+        return new Snippet("break;");
+    }
+
+    public Snippet Continue() {
+        return new Snippet("continue;");
+    }
+
+    public Snippet Throw(Snippet expression) {
+        return new Snippet("throw " + expression + ';');
+    }
+
+    public Snippet Assignment(Snippet variable, Snippet expression) {
+        return new Snippet(variable + " = " + expression);
+    }
+
+    public Snippet Identifier(CharSequence name) {
+        return new Snippet(name.toString());
+    }
+
+    public Snippet MemberSelect(Snippet expression, CharSequence name) {
+        return new Snippet(expression.toString() + '.' + name);
+    }
+
+    /**
+     * Type arguments go in front of the method name, after the last dot,
+     * e.g. <code>Collections.&lt;String&gt;emptyList()</code>.
+     */
+    public Snippet MethodInvocation(List<? extends Snippet> typeArguments, Snippet method, List<? extends Snippet> arguments) {
+        String name = method.toString();
+        if (!typeArguments.isEmpty()) {
+            int dot = name.lastIndexOf('.') + 1;
+            name = name.substring(0, dot) + '<' + join(typeArguments, ", ") + '>' + name.substring(dot);
+        }
+        return new Snippet(name + '(' + join(arguments, ", ") + ')');
+    }
+
+    public Snippet NewClass(Snippet type, List<? extends Snippet> arguments) {
+        return new Snippet("new " + type + '(' + join(arguments, ", ") + ')');
+    }
+
+    public Snippet NewArray(Snippet elementType, List<? extends Snippet> initializers) {
+        return new Snippet("new " + elementType + "[]{" + join(initializers, ", ") + '}');
+    }
+
+    public Snippet Literal(Object value) {
+        if (value instanceof String) {
+            return new Snippet('"' + escape((String) value, '"') + '"');
+        }
+        if (value instanceof Character) {
+            return new Snippet('\'' + escape(value.toString(), '\'') + '\'');
+        }
+        if (value instanceof Long) {
+            return new Snippet(value + "L");
+        }
+        if (value instanceof Float) {
+            return new Snippet(value + "F");
+        }
+        return new Snippet(String.valueOf(value));
+    }
+
+    public Snippet Binary(Tree.Kind kind, Snippet left, Snippet right) {
+        return new Snippet(left + " " + operator(kind) + " " + right);
+    }
+
+    public Snippet ConditionalExpression(Snippet condition, Snippet trueExpression, Snippet falseExpression) {
+        return new Snippet(condition + " ? " + trueExpression + " : " + falseExpression);
+    }
+
+    /**
+     * @return every line of the text but the empty ones prefixed with
+     * <code>indent</code>
+     */
+    public static String indent(String text, String indent) {
+        StringBuilder sb = new StringBuilder(text.length() + indent.length());
+        int lineStart = 0;
+        while (lineStart <= text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            if (lineEnd > lineStart) {
+                sb.append(indent).append(text, lineStart, lineEnd);
+            }
+            if (lineEnd < text.length()) {
+                sb.append('\n');
+            }
+            lineStart = lineEnd + 1;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the members one after another, with a blank line between two
+     * of them unless both take one line, e.g. two fields
+     */
+    public static String members(List<? extends Snippet> members, String indent) {
+        StringBuilder sb = new StringBuilder();
+        Snippet previous = null;
+        for (Snippet member : members) {
+            if (previous != null) {
+                sb.append(previous.isSingleLine() && member.isSingleLine() ? "\n" : "\n\n");
+            }
+            sb.append(indent(member.declaration(), indent));
+            previous = member;
+        }
+        return sb.toString();
+    }
+
+    private String classBody(List<? extends Snippet> members) {
+        if (members.isEmpty()) {
+            return "{\n}";
+        }
+        return "{\n" + members(members, INDENT) + "\n}";
+    }
+
+    private static String join(List<? extends Snippet> snippets, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (Snippet snippet : snippets) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(snippet);
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value, char quote) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c == quote) {
+                        sb.append('\\');
+                    }
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String operator(Tree.Kind kind) {
+        switch (kind) {
+            case EQUAL_TO:
+                return "==";
+            case NOT_EQUAL_TO:
+                return "!=";
+            case PLUS:
+                return "+";
+            case MINUS:
+                return "-";
+            case CONDITIONAL_AND:
+                return "&&";
+            case CONDITIONAL_OR:
+                return "||";
+            case LESS_THAN:
+                return "<";
+            case GREATER_THAN:
+                return ">";
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + kind);
+        }
+    }
+}
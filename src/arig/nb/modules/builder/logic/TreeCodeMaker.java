@@ -0,0 +1,217 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.logic;
+
+import arig.nb.modules.builder.core.CodeMaker;
+import com.sun.source.tree.AnnotationTree;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.CaseTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ModifiersTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeParameterTree;
+import com.sun.source.tree.VariableTree;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+import org.netbeans.api.java.source.TreeMaker;
+
+/**
+ * Makes the trees of a working copy. Trees of the parsed source are used as
+ * they are, the working copy copies them where needed.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class TreeCodeMaker implements CodeMaker<Tree> {
+
+    private final TreeMaker make;
+
+    public TreeCodeMaker(TreeMaker make) {
+        this.make = make;
+    }
+
+    public Tree Modifiers(Set<Modifier> flags) {
+        return make.Modifiers(flags);
+    }
+
+    public Tree Modifiers(Set<Modifier> flags, List<? extends Tree> annotations) {
+        return make.Modifiers(flags, TreeCodeMaker.<AnnotationTree>cast(annotations));
+    }
+
+    public Tree Annotation(Tree type, List<? extends Tree> arguments) {
+        return make.Annotation(type, TreeCodeMaker.<ExpressionTree>cast(arguments));
+    }
+
+    public Tree Type(String type) {
+        return make.Type(type);
+    }
+
+    public Tree PrimitiveType(TypeKind kind) {
+        return make.PrimitiveType(kind);
+    }
+
+    public Tree Parsed(Tree tree) {
+        return tree;
+    }
+
+    public Tree TypeParameter(CharSequence name, List<? extends Tree> bounds) {
+        return make.TypeParameter(name, TreeCodeMaker.<ExpressionTree>cast(bounds));
+    }
+
+    public Tree Variable(Tree modifiers, CharSequence name, Tree type, Tree initializer) {
+        return make.Variable((ModifiersTree) modifiers, name, type, (ExpressionTree) initializer);
+    }
+
+    public Tree Constructor(Tree modifiers, CharSequence className, List<? extends Tree> parameters, Tree body) {
+        return make.Constructor((ModifiersTree) modifiers,
+                Collections.<TypeParameterTree>emptyList(),
+                TreeCodeMaker.<VariableTree>cast(parameters),
+                Collections.<ExpressionTree>emptyList(),
+                (BlockTree) body);
+    }
+
+    public Tree Method(Tree modifiers, CharSequence name, Tree returnType, List<? extends Tree> typeParameters,
+            List<? extends Tree> parameters, List<? extends Tree> thrown, Tree body) {
+        return make.Method((ModifiersTree) modifiers,
+                name,
+                returnType,
+                TreeCodeMaker.<TypeParameterTree>cast(typeParameters),
+                TreeCodeMaker.<VariableTree>cast(parameters),
+                TreeCodeMaker.<ExpressionTree>cast(thrown),
+                (BlockTree) body,
+                null);
+    }
+
+    public Tree Class(Tree modifiers, CharSequence name, List<? extends Tree> typeParameters, Tree extendsClause,
+            List<? extends Tree> implementsClauses, List<? extends Tree> members) {
+        return make.Class((ModifiersTree) modifiers, name, TreeCodeMaker.<TypeParameterTree>cast(typeParameters),
+                extendsClause, implementsClauses, members);
+    }
+
+    public Tree Interface(Tree modifiers, CharSequence name, List<? extends Tree> typeParameters, List<? extends Tree> members) {
+        return make.Interface((ModifiersTree) modifiers, name, TreeCodeMaker.<TypeParameterTree>cast(typeParameters),
+                Collections.<Tree>emptyList(), members);
+    }
+
+    public Tree Block(List<? extends Tree> statements) {
+        return make.Block(TreeCodeMaker.<StatementTree>cast(statements), false);
+    }
+
+    public Tree Return(Tree expression) {
+        return make.Return((ExpressionTree) expression);
+    }
+
+    public Tree ExpressionStatement(Tree expression) {
+        return make.ExpressionStatement((ExpressionTree) expression);
+    }
+
+    public Tree If(Tree condition, Tree thenStatement, Tree elseStatement) {
+        return make.If((ExpressionTree) condition, (StatementTree) thenStatement, (StatementTree) elseStatement);
+    }
+
+    public Tree WhileLoop(Tree condition, Tree body) {
+        return make.WhileLoop((ExpressionTree) condition, (StatementTree) body);
+    }
+
+    public Tree Switch(Tree expression, List<? extends Tree> cases) {
+        return make.Switch((ExpressionTree) expression, TreeCodeMaker.<CaseTree>cast(cases));
+    }
+
+    public Tree Case(Tree expression, List<? extends Tree> statements) {
+        return make.Case((ExpressionTree) expression, TreeCodeMaker.<StatementTree>cast(statements));
+    }
+
+    public Tree Break() {
+        return make.Break(null);
+    }
+
+    public Tree Continue() {
+        return make.Continue(null);
+    }
+
+    public Tree Throw(Tree expression) {
+        return make.Throw((ExpressionTree) expression);
+    }
+
+    public Tree Assignment(Tree variable, Tree expression) {
+        return make.Assignment((ExpressionTree) variable, (ExpressionTree) expression);
+    }
+
+    public Tree Identifier(CharSequence name) {
+        return make.Identifier(name);
+    }
+
+    public Tree MemberSelect(Tree expression, CharSequence name) {
+        return make.MemberSelect((ExpressionTree) expression, name);
+    }
+
+    public Tree MethodInvocation(List<? extends Tree> typeArguments, Tree method, List<? extends Tree> arguments) {
+        return make.MethodInvocation(TreeCodeMaker.<ExpressionTree>cast(typeArguments),
+                (ExpressionTree) method,
+                TreeCodeMaker.<ExpressionTree>cast(arguments));
+    }
+
+    public Tree NewClass(Tree type, List<? extends Tree> arguments) {
+        return make.NewClass(null,
+                Collections.<ExpressionTree>emptyList(),
+                (ExpressionTree) type,
+                TreeCodeMaker.<ExpressionTree>cast(arguments),
+                null);
+    }
+
+    public Tree NewArray(Tree elementType, List<? extends Tree> initializers) {
+        return make.NewArray(elementType,
+                Collections.<ExpressionTree>emptyList(),
+                TreeCodeMaker.<ExpressionTree>cast(initializers));
+    }
+
+    public Tree Literal(Object value) {
+        return make.Literal(value);
+    }
+
+    public Tree Binary(Tree.Kind kind, Tree left, Tree right) {
+        return make.Binary(kind, (ExpressionTree) left, (ExpressionTree) right);
+    }
+
+    public Tree ConditionalExpression(Tree condition, Tree trueExpression, Tree falseExpression) {
+        return make.ConditionalExpression((ExpressionTree) condition,
+                (ExpressionTree) trueExpression,
+                (ExpressionTree) falseExpression);
+    }
+
+    /**
+     * The builders pass lists of the right kind of trees, only the type
+     * checker does not know it.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Tree> List<E> cast(List<? extends Tree> trees) {
+        return (List<E>) trees;
+    }
+}
@@ -0,0 +1,155 @@
+/* 
+ * Copyright (c) 2013, Arkadiusz Gabiga
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Arkadiusz Gabiga nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL ARKADIUSZ GABIGA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package arig.nb.modules.builder.logic;
+
+import arig.nb.modules.builder.core.CodeEditor;
+import arig.nb.modules.builder.utils.Util;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.netbeans.api.java.source.TreeMaker;
+import org.netbeans.api.java.source.WorkingCopy;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Changes a working copy. Replacements are rewritten right away, members
+ * and statements are collected per class and block and rewritten by
+ * {@link #flush()}, together with the imports.
+ *
+ * @author Arkadiusz Gabiga
+ */
+public class WorkingCopyEditor implements CodeEditor<Tree> {
+
+    private final WorkingCopy workingCopy;
+    private final TreeMaker make;
+    private final FileObject root;
+    private final Util util = new Util();
+    private final Map<Tree, Tree> modified = new IdentityHashMap<Tree, Tree>();
+    private final Set<String> imports = new LinkedHashSet<String>();
+
+    /**
+     * @param root source root to create files in, <code>null</code> if
+     * files can not be created
+     */
+    public WorkingCopyEditor(WorkingCopy workingCopy, FileObject root) {
+        this.workingCopy = workingCopy;
+        this.make = workingCopy.getTreeMaker();
+        this.root = root;
+    }
+
+    public void addMember(ClassTree clazz, Tree member) {
+        modified.put(clazz, make.addClassMember(modified(clazz), member));
+    }
+
+    public void insertMember(ClassTree clazz, Tree before, Tree member) {
+        ClassTree modifiedClazz = modified(clazz);
+        modified.put(clazz, make.insertClassMember(modifiedClazz, modifiedClazz.getMembers().indexOf(before), member));
+    }
+
+    public void removeMember(ClassTree clazz, Tree member) {
+        modified.put(clazz, make.removeClassMember(modified(clazz), member));
+    }
+
+    public void replace(Tree original, Tree replacement) {
+        workingCopy.rewrite(original, replacement);
+    }
+
+    public void addStatement(BlockTree block, Tree statement) {
+        modified.put(block, make.addBlockStatement(modified(block), (StatementTree) statement));
+    }
+
+    public void removeStatement(BlockTree block, StatementTree statement) {
+        modified.put(block, make.removeBlockStatement(modified(block), statement));
+    }
+
+    public void addImport(String qualifiedName) {
+        imports.add(qualifiedName);
+    }
+
+    public boolean canCreateFiles() {
+        return root != null;
+    }
+
+    /**
+     * The file gets the imports of the compilation unit, plus the given ones
+     * it does not have, see {@link Util#fileImports}.
+     */
+    public void createFile(String className, Collection<String> classImports, Tree clazz) {
+        CompilationUnitTree cut = workingCopy.getCompilationUnit();
+        List<ImportTree> fileImports = new ArrayList<ImportTree>();
+        for (String qualifiedName : util.fileImports(cut, classImports, false)) {
+            fileImports.add(make.Import(make.Identifier(qualifiedName), false));
+        }
+        for (String qualifiedName : util.fileImports(cut, classImports, true)) {
+            fileImports.add(make.Import(make.Identifier(qualifiedName), true));
+        }
+        String folder = cut.getPackageName() == null ? "" : cut.getPackageName().toString().replace('.', '/') + "/";
+        workingCopy.rewrite(null, make.CompilationUnit(root,
+                folder + className + ".java",
+                fileImports,
+                Collections.singletonList(clazz)));
+    }
+
+    /**
+     * Rewrites the classes and blocks changed so far and adds the imports
+     * the compilation unit does not have yet.
+     */
+    public void flush() {
+        for (Map.Entry<Tree, Tree> entry : modified.entrySet()) {
+            workingCopy.rewrite(entry.getKey(), entry.getValue());
+        }
+        modified.clear();
+        CompilationUnitTree cut = workingCopy.getCompilationUnit();
+        CompilationUnitTree newCut = cut;
+        for (String qualifiedName : imports) {
+            if (!util.isImported(cut, qualifiedName)) {
+                newCut = make.addCompUnitImport(newCut, make.Import(make.Identifier(qualifiedName), false));
+            }
+        }
+        imports.clear();
+        if (newCut != cut) {
+            workingCopy.rewrite(cut, newCut);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Tree> E modified(E original) {
+        Tree tree = modified.get(original);
+        return tree == null ? original : (E) tree;
+    }
+}
@@ -4,10 +4,24 @@
  */
 package arig.nb.modules.builder.utils;
 
+import arig.nb.modules.builder.core.BuilderNames;
+import com.sun.source.tree.AnnotationTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import javax.lang.model.element.Modifier;
 
 /**
@@ -15,12 +29,230 @@ import javax.lang.model.element.Modifier;
  * @author arek
  */
 public class Util {
+
+    private static final Set<String> REQUIRED_ANNOTATIONS = new HashSet<String>(Arrays.asList("NonNull", "Nonnull", "NotNull"));
+    private static final String RECORD = "RECORD";
+    /**
+     * Sets returned by {@link #modifiers}, indexed by the bit mask of the
+     * modifier ordinals and filled on first use.
+     */
+    private static final AtomicReferenceArray<Set<Modifier>> MODIFIER_SETS =
+            new AtomicReferenceArray<Set<Modifier>>(1 << Modifier.values().length);
+
+    /**
+     * Final fields with an initializer can not be set by any constructor,
+     * they are left out as well as the static ones.
+     */
     public boolean canProcess(VariableTree var) {
         Set<Modifier> flags = var.getModifiers().getFlags();
-        return !flags.contains(Modifier.STATIC);
+        return !flags.contains(Modifier.STATIC)
+                && !(flags.contains(Modifier.FINAL) && var.getInitializer() != null);
+    }
+    
+    public boolean isClassLike(Tree tree) {
+        switch (tree.getKind()) {
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                return true;
+            default:
+                return isRecord(tree);
+        }
+    }
+
+    /**
+     * The kind is compared by name, records are not known to the tree API
+     * this module is compiled against.
+     */
+    public boolean isRecord(Tree tree) {
+        return RECORD.equals(tree.getKind().name());
+    }
+
+    /**
+     * @return <code>true</code> for classes and records, the types which
+     * get a builder, except for builders generated to files of their own
+     */
+    public boolean canGenerate(ClassTree clazz) {
+        return (clazz.getKind() == Tree.Kind.CLASS || isRecord(clazz)) && !isBuilderFile(clazz);
+    }
+
+    /**
+     * @return whether the class declares a static <code>builder()</code>
+     * returning the class itself, as the separate builder files do
+     */
+    public boolean isBuilderFile(ClassTree clazz) {
+        String name = clazz.getSimpleName().toString();
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() == Tree.Kind.METHOD) {
+                MethodTree method = (MethodTree) member;
+                if (method.getName().contentEquals(BuilderNames.BUILDER_METHOD_NAME)
+                        && method.getModifiers().getFlags().contains(Modifier.STATIC)
+                        && method.getReturnType() != null) {
+                    String type = method.getReturnType().toString();
+                    if (type.equals(name) || type.startsWith(name + "<")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records and classes with a final field can not be filled in field by
+     * field after construction, their builders pass all fields to the
+     * canonical or all-args constructor instead.
+     */
+    public boolean isDirectConstruction(ClassTree clazz, List<VariableTree> fields) {
+        if (isRecord(clazz)) {
+            return true;
+        }
+        for (VariableTree field : fields) {
+            if (field.getModifiers().getFlags().contains(Modifier.FINAL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return constructor taking exactly the given fields, in the same
+     * order, by the same type and by the same name, or <code>null</code>.
+     * A constructor taking fields of the same type in another order would
+     * swap their values, so the names have to match as well. Not meant for
+     * records, their canonical constructor is implicit unless written out.
+     */
+    public MethodTree findAllArgsConstructor(ClassTree clazz, List<VariableTree> fields) {
+        return findConstructor(clazz, fields, true);
+    }
+
+    /**
+     * @return constructor taking the types of the given fields in the same
+     * order, but not by their names, if the class has no
+     * {@link #findAllArgsConstructor all-args constructor}, otherwise
+     * <code>null</code>. Another all-args constructor can not be added next
+     * to it.
+     */
+    public MethodTree findReorderedConstructor(ClassTree clazz, List<VariableTree> fields) {
+        return findConstructor(clazz, fields, true) == null ? findConstructor(clazz, fields, false) : null;
+    }
+
+    private MethodTree findConstructor(ClassTree clazz, List<VariableTree> fields, boolean byName) {
+        for (Tree member : clazz.getMembers()) {
+            if (member.getKind() != Tree.Kind.METHOD) {
+                continue;
+            }
+            MethodTree method = (MethodTree) member;
+            if (!BuilderNames.CONSTRUCTOR_NAME.contentEquals(method.getName())
+                    || method.getParameters().size() != fields.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < fields.size() && matches; i++) {
+                VariableTree parameter = method.getParameters().get(i);
+                matches = parameter.getType().toString().equals(fields.get(i).getType().toString())
+                        && (!byName || parameter.getName().contentEquals(fields.get(i).getName()));
+            }
+            if (matches) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Only static nested classes can declare the static
+     * <code>builder()</code> method, members of interfaces are static
+     * implicitly. Builders themselves are never descended into.
+     */
+    public boolean canHaveBuilder(ClassTree outer, ClassTree nested) {
+        if (BuilderNames.BUILDER_CLASS_NAME.contentEquals(nested.getSimpleName())) {
+            return false;
+        }
+        return nested.getKind() != Tree.Kind.CLASS
+                || nested.getModifiers().getFlags().contains(Modifier.STATIC)
+                || outer.getKind() == Tree.Kind.INTERFACE
+                || outer.getKind() == Tree.Kind.ANNOTATION_TYPE;
     }
     
+    /**
+     * Fields annotated as never null, by any of the usual
+     * <code>@NonNull</code>, <code>@Nonnull</code> or <code>@NotNull</code>
+     * annotations, are required by staged builders. Only the simple name of
+     * the annotation is checked, nothing is attributed.
+     */
+    public boolean isRequired(VariableTree var) {
+        for (AnnotationTree annotation : var.getModifiers().getAnnotations()) {
+            String name = annotation.getAnnotationType().toString();
+            if (REQUIRED_ANNOTATIONS.contains(name.substring(name.lastIndexOf('.') + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return unmodifiable set of the modifiers, the same instance every
+     * time for the same modifiers
+     */
     public Set<Modifier> modifiers(Modifier... mods) {
-        return new HashSet<Modifier>(Arrays.asList(mods));
+        int mask = 0;
+        for (Modifier mod : mods) {
+            mask |= 1 << mod.ordinal();
+        }
+        Set<Modifier> modifiers = MODIFIER_SETS.get(mask);
+        if (modifiers == null) {
+            Set<Modifier> set = EnumSet.noneOf(Modifier.class);
+            Collections.addAll(set, mods);
+            MODIFIER_SETS.compareAndSet(mask, null, Collections.unmodifiableSet(set));
+            modifiers = MODIFIER_SETS.get(mask);
+        }
+        return modifiers;
+    }
+
+    /**
+     * @return true if the type with given qualified name can be referred to
+     * by its simple name in the compilation unit without a new import
+     */
+    public boolean isImported(CompilationUnitTree cut, String qualifiedName) {
+        int dot = qualifiedName.lastIndexOf('.');
+        String pkg = qualifiedName.substring(0, dot);
+        if (cut.getPackageName() != null && pkg.equals(cut.getPackageName().toString())) {
+            return true;
+        }
+        for (ImportTree importTree : cut.getImports()) {
+            String imported = importTree.getQualifiedIdentifier().toString();
+            if (!importTree.isStatic() && (imported.equals(qualifiedName) || imported.equals(pkg + ".*"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Imports of a file created next to the compilation unit, see
+     * {@link arig.nb.modules.builder.core.CodeEditor#createFile}: those of
+     * the unit and the given ones it lacks. They are sorted, so the file
+     * comes out the same whatever order the unit imports them in.
+     *
+     * @param statics <code>true</code> for the static imports of the unit
+     * only
+     */
+    public SortedSet<String> fileImports(CompilationUnitTree cut, Collection<String> classImports, boolean statics) {
+        SortedSet<String> imports = new TreeSet<String>();
+        for (ImportTree importTree : cut.getImports()) {
+            if (importTree.isStatic() == statics) {
+                imports.add(importTree.getQualifiedIdentifier().toString());
+            }
+        }
+        if (!statics) {
+            for (String qualifiedName : classImports) {
+                if (!isImported(cut, qualifiedName)) {
+                    imports.add(qualifiedName);
+                }
+            }
+        }
+        return imports;
     }
 }